@@ -0,0 +1,815 @@
+// I/O imports
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+// Management imports
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+// Connection imports
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+// Utility imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// GSON imports
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+
+/*
+ * Micro benchmarks of the server hot paths. Every benchmark runs a few warmup iterations and then a few
+ * measured iterations of a fixed number of operations, and prints the mean time per operation with its
+ * standard deviation, one line per benchmark, so two runs can be compared with diff. A few benchmarks
+ * report the heap retained by a data structure instead.
+ * Run it with bench/run.sh (it must run in a scratch directory with a copy of words.txt), optionally
+ * passing a regular expression to select the benchmarks by name.
+ */
+public class WordleBenchmark {
+  private static final int WARMUP_ITERATIONS = 3;
+  private static final int ITERATIONS = 5;
+
+  private static String filter = ".*"; // benchmarks to run
+  private static List<String> wordsLIST; // words of words.txt
+  private static WordDictionary words; // dictionary of words.txt
+
+  public static void main(String[] args) throws Exception {
+    if (args.length > 0) filter = args[0];
+
+    wordsLIST = Files.readAllLines(Paths.get("words.txt"));
+    words = new WordDictionary(wordsLIST);
+
+    System.out.println(String.format(Locale.ROOT, "%-32s %-10s %14s %12s  %s", "Benchmark", "Param", "Score", "Error", "Units"));
+
+    benchHints();
+    benchDictionary();
+    benchDictionaryStartup();
+    benchUsersFile();
+    benchUsersLoad();
+    benchUsersHeap();
+    benchPlayedWordsHeap();
+    benchStartup();
+    benchLookup();
+    benchCheckPlay();
+    benchUpdateWin();
+    benchLeaderboard();
+    benchGuessOverLoopback();
+    benchIdleSessions();
+    benchShare();
+    benchMetrics();
+    benchWordStatistics();
+
+    System.exit(0); // stop the server threads started by the benchmarks
+  }
+
+  // A benchmarked operation, "i" is the index of the operation in the iteration
+  private interface Operation {
+    void run(int i) throws Exception;
+  }
+
+  // Returns true if one of the benchmarks is selected by the filter, so its setup must be done
+  private static boolean selected(String... names) {
+    for (String name: names) if (name.matches(filter)) return true;
+    return false;
+  }
+
+  // Run and report a benchmark
+  private static void bench(String name, String param, int operations, Operation operation) throws Exception {
+    if (!selected(name)) return;
+
+    double[] results = new double[ITERATIONS];
+
+    for (int iteration = -WARMUP_ITERATIONS; iteration < ITERATIONS; iteration++) {
+      long start = System.nanoTime();
+      for (int i=0; i<operations; i++) operation.run(i);
+      long elapsed = System.nanoTime() - start;
+
+      if (iteration >= 0) results[iteration] = (double) elapsed / operations;
+    }
+
+    double mean = Arrays.stream(results).average().orElse(0);
+    double deviation = Math.sqrt(Arrays.stream(results).map(r -> (r - mean) * (r - mean)).sum() / ITERATIONS);
+
+    System.out.println(String.format(Locale.ROOT, "%-32s %-10s %14.1f %12.1f  %s", name, param, mean, deviation, "ns/op"));
+  }
+
+  // Report the heap retained by the object created by "creator"
+  private static void heap(String name, String param, Callable<Object> creator) throws Exception {
+    if (!selected(name)) return;
+
+    long before = usedHeap();
+    Object retained = creator.call();
+    long after = usedHeap();
+
+    System.out.println(String.format(Locale.ROOT, "%-32s %-10s %14d %12s  %s", name, param, after - before, "-", "bytes"));
+    Objects.requireNonNull(retained); // keep it reachable until measured
+  }
+
+  // Report the highest heap left after a garbage collection while "creator" runs, above the heap used before: the peak of the live objects (plus the old garbage not collected yet)
+  private static void peakHeap(String name, String param, Callable<Object> creator) throws Exception {
+    if (!selected(name)) return;
+
+    Set<String> heapPools = new HashSet<>();
+    for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) if (pool.getType() == MemoryType.HEAP) heapPools.add(pool.getName());
+
+    long before = usedHeap();
+    AtomicLong peak = new AtomicLong();
+
+    NotificationListener listener = (notification, handback) -> {
+      if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
+
+      GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+      long used = 0;
+      for (Map.Entry<String, MemoryUsage> pool: info.getGcInfo().getMemoryUsageAfterGc().entrySet()) if (heapPools.contains(pool.getKey())) used += pool.getValue().getUsed();
+
+      peak.accumulateAndGet(used, Math::max);
+    };
+
+    for (GarbageCollectorMXBean collector: ManagementFactory.getGarbageCollectorMXBeans()) ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+
+    Object retained = creator.call();
+    long after = usedHeap(); // waits for the notifications of the last collections too
+
+    for (GarbageCollectorMXBean collector: ManagementFactory.getGarbageCollectorMXBeans()) ((NotificationEmitter) collector).removeNotificationListener(listener);
+
+    System.out.println(String.format(Locale.ROOT, "%-32s %-10s %14d %12s  %s", name, param, Math.max(peak.get(), after) - before, "-", "bytes"));
+    Objects.requireNonNull(retained); // keep it reachable until measured
+  }
+
+  // Returns the heap used by live objects
+  private static long usedHeap() throws InterruptedException {
+    long used = Long.MAX_VALUE;
+
+    // Collect until the heap stops shrinking: objects freed by cleaners and reference queues need more than one collection
+    for (int i=0; i<20; i++) {
+      System.gc();
+      Thread.sleep(50);
+
+      long now = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+      if (i >= 2 && used - now < 1024 * 1024) return now;
+      used = now;
+    }
+
+    return used;
+  }
+
+  // Hint word of a guess against the secret word
+  private static void benchHints() throws Exception {
+    HintEngine hints = new HintEngine();
+    SecretWordEpoch epoch = new SecretWordEpoch(wordsLIST.get(wordsLIST.size() / 2), 1);
+    int[] sink = new int[1];
+
+    bench("hints", "-", wordsLIST.size(), i -> sink[0] += hints.compute(epoch, wordsLIST.get(i))[0]);
+  }
+
+  // Validation of a guessed word, with the List.contains it replaced as baseline
+  private static void benchDictionary() throws Exception {
+    Random random = new Random(42);
+    String[] guesses = new String[4096];
+    for (int i=0; i<guesses.length; i++) guesses[i] = random.nextBoolean() ? wordsLIST.get(random.nextInt(wordsLIST.size())) : "zzzzzzzzzz";
+
+    int[] sink = new int[1];
+
+    bench("dictionary.contains", "-", guesses.length * 64, i -> {if (words.contains(guesses[i % guesses.length])) sink[0]++;});
+    bench("dictionary.listContains", "-", 64, i -> {if (wordsLIST.contains(guesses[i])) sink[0]++;});
+
+    if (!selected("dictionary.containsMapped")) return;
+
+    WordDictionary mapped = WordDictionary.open(Paths.get("words.txt")); // builds words.dict the first time
+    bench("dictionary.containsMapped", "-", guesses.length * 64, i -> {if (mapped.contains(guesses[i % guesses.length])) sink[0]++;});
+  }
+
+  // Startup cost of the dictionary (read and pack every line, or map the file built once) and its heap, with 100 times the words of words.txt
+  private static void benchDictionaryStartup() throws Exception {
+    if (!selected("dictionary.load", "dictionary.map", "dictionary.build", "dictionary.loadHeap", "dictionary.mapHeap")) return;
+
+    int size = wordsLIST.size() * 100;
+    Path text = Paths.get("bench-words.txt");
+    Path dictionary = Paths.get("bench-words.dict");
+
+    // Random distinct words
+    Random random = new Random(42);
+    Set<String> generated = new HashSet<>();
+    char[] word = new char[WordDictionary.WORD_LENGTH];
+
+    while (generated.size() < size) {
+      for (int i=0; i<word.length; i++) word[i] = (char) ('a' + random.nextInt(26));
+      generated.add(new String(word));
+    }
+
+    Files.write(text, generated);
+    generated = null;
+
+    bench("dictionary.build", "" + size, 1, i -> WordDictionary.build(text, dictionary));
+    bench("dictionary.load", "" + size, 1, i -> WordDictionary.load(text));
+    bench("dictionary.map", "" + size, 1, i -> WordDictionary.map(dictionary));
+
+    heap("dictionary.loadHeap", "" + size, () -> WordDictionary.load(text));
+    heap("dictionary.mapHeap", "" + size, () -> WordDictionary.map(dictionary));
+
+    Files.deleteIfExists(text);
+    Files.deleteIfExists(dictionary);
+  }
+
+  // Load and store of RegisteredUsers.json with several users, of the same users in 16 shard files, and in the record files
+  // "usersFile.updateJSON" is what a finished game cost the session thread before the UserStore (read the whole file, replace the user, write the whole file),
+  // "usersFile.store" is the background flush writing the same change, "usersFile.markDirty" what a finished game costs the session thread now
+  private static void benchUsersFile() throws Exception {
+    if (!selected("usersFile.load", "usersFile.store", "usersFile.updateJSON", "usersFile.markDirty", "usersShards.load", "usersShards.store", "usersRecords.load", "usersRecords.store")) return;
+
+    for (int users: new int[] {1000, 10000, 100000}) {
+      File file = new File("bench-users-" + users + ".json");
+      Files.deleteIfExists(file.toPath());
+
+      UserStore store = new UserStore(file);
+      for (int i=0; i<users; i++) store.add(newUser("user" + i, 20));
+      store.flush();
+
+      int operations = Math.max(1, 100000 / users);
+
+      bench("usersFile.load", "" + users, operations, i -> UserStore.read(file));
+
+      bench("usersFile.store", "" + users, operations, i -> {
+        store.statisticsUpdated(store.getUsers().get(i));
+        store.flush();
+      });
+
+      bench("usersFile.updateJSON", "" + users, operations, i -> updateJSON(file, store.getUsers().get(i)));
+
+      bench("usersFile.markDirty", "" + users, 100000, i -> store.statisticsUpdated(store.getUsers().get(i % users)));
+      store.flush();
+
+      if (selected("usersRecords.load", "usersRecords.store")) {
+        File recordsFile = new File("bench-records-" + users + ".json");
+        Files.copy(file.toPath(), recordsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        UserStore records = new UserStore(recordsFile);
+        records.startRecords(3600000); // synced by the benchmark, converts the users the first time
+
+        bench("usersRecords.load", "" + users, operations, i -> {
+          UserRecordFile loaded = new UserRecordFile(recordsFile);
+          loaded.open();
+          loaded.close();
+        });
+
+        bench("usersRecords.store", "" + users, operations, i -> {
+          records.statisticsUpdated(records.getUsers().get(i)); // written in place in his slot
+          records.flush(); // msync
+        });
+
+        records.close();
+        for (String extension: new String[] {".json", ".dat", ".idx", ".log"}) Files.deleteIfExists(Paths.get("bench-records-" + users + extension));
+      }
+
+      Files.deleteIfExists(file.toPath());
+
+      if (!selected("usersShards.load", "usersShards.store")) continue;
+
+      File shardsFile = new File("bench-shards-" + users + ".json");
+      UserStore sharded = new UserStore(shardsFile);
+      sharded.startShards(16, 3600000); // flushed by the benchmark
+      for (User user: store.getUsers()) sharded.add(user);
+      sharded.flush();
+
+      bench("usersShards.load", "" + users, operations, i -> new ShardedUserPersistence(shardsFile, 16, sharded::lockFor).load());
+
+      bench("usersShards.store", "" + users, operations, i -> {
+        sharded.statisticsUpdated(sharded.getUsers().get(i)); // only his shard is written
+        sharded.flush();
+      });
+
+      sharded.close();
+      for (int shard=0; shard<16; shard++) Files.deleteIfExists(Paths.get("bench-shards-" + users + "." + shard + "-of-16.json"));
+    }
+  }
+
+  // The write of a changed user before the UserStore: the whole file read, the user replaced and the whole file written, by the session thread
+  private static void updateJSON(File file, User user) throws IOException {
+    Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    List<User> users;
+
+    try (FileReader reader = new FileReader(file)) {users = gson.fromJson(reader, new TypeToken<List<User>>() {}.getType());}
+
+    for (int i=0; i<users.size(); i++) if (users.get(i).getUsername().equals(user.getUsername())) users.set(i, user);
+
+    try (FileWriter writer = new FileWriter(file)) {gson.toJson(users, writer);}
+  }
+
+  // Startup load of RegisteredUsers.json: the whole list decoded at once by a pretty printing Gson and then indexed (what the UserStore did),
+  // or indexed while read by the UserLoader, decoding one user at a time (one core) or in parallel batches (more cores), time and peak heap
+  private static void benchUsersLoad() throws Exception {
+    if (!selected("usersLoad.tree", "usersLoad.stream", "usersLoad.parallel", "usersLoad.treePeak", "usersLoad.streamPeak", "usersLoad.parallelPeak")) return;
+
+    for (int users: new int[] {100000, 1000000}) {
+      File file = new File("bench-load-" + users + ".json");
+      Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+      // Write the users one at a time, 1M users don't fit in a JsonArray
+      try (JsonWriter writer = new JsonWriter(new FileWriter(file))) {
+        writer.setIndent("  ");
+        writer.beginArray();
+        for (int i=0; i<users; i++) gson.toJson(newUser("user" + i, 5), User.class, writer);
+        writer.endArray();
+      }
+
+      bench("usersLoad.tree", "" + users, 1, i -> loadTree(file));
+      bench("usersLoad.stream", "" + users, 1, i -> loadStream(file, false));
+      bench("usersLoad.parallel", "" + users, 1, i -> loadStream(file, true));
+
+      peakHeap("usersLoad.treePeak", "" + users, () -> loadTree(file));
+      peakHeap("usersLoad.streamPeak", "" + users, () -> loadStream(file, false));
+      peakHeap("usersLoad.parallelPeak", "" + users, () -> loadStream(file, true));
+
+      Files.deleteIfExists(file.toPath());
+    }
+  }
+
+  // Heap retained by 1M new users, the per-user cost of the User model (username, password, statistics and guess distribution)
+  private static void benchUsersHeap() throws Exception {
+    int users = 1000000;
+
+    heap("usersHeap", "" + users, () -> {
+      User[] created = new User[users];
+      for (int i=0; i<users; i++) created[i] = newUser("user" + i, 0);
+      return created;
+    });
+  }
+
+  // Heap retained by the users read from a RegisteredUsers.json where every user played the same number of words (and shared nothing)
+  private static void benchPlayedWordsHeap() throws Exception {
+    if (!selected("playedWordsHeap")) return;
+
+    for (int[] param: new int[][] {{100000, 40}, {10000, 400}}) {
+      int users = param[0], games = param[1];
+      File file = new File("bench-played-" + users + ".json");
+      Files.deleteIfExists(file.toPath());
+
+      writePlayers(file, users, games);
+      heap("playedWordsHeap", users + "x" + games, () -> UserStore.read(file));
+
+      Files.deleteIfExists(file.toPath());
+    }
+  }
+
+  // Write a users file where every user played "games" words, one user at a time
+  private static void writePlayers(File file, int users, int games) throws IOException {
+    Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    try (JsonWriter writer = new JsonWriter(new FileWriter(file))) {
+      writer.setIndent("  ");
+      writer.beginArray();
+
+      for (int i=0; i<users; i++) {
+        User user = new User("user" + i, "password");
+        for (int j=0; j<games; j++) user.getPlayedWords().add((i + j * 7) % wordsLIST.size());
+        gson.toJson(user, User.class, writer);
+      }
+
+      writer.endArray();
+    }
+  }
+
+  // Read and index the users like the UserStore did before the UserLoader
+  private static Map<String, User> loadTree(File file) throws IOException {
+    List<User> users;
+    try (FileReader reader = new FileReader(file)) {users = new GsonBuilder().setPrettyPrinting().create().fromJson(reader, new TypeToken<List<User>>() {}.getType());}
+
+    Map<String, User> usersMAP = new ConcurrentHashMap<>();
+    for (User user: users) usersMAP.put(user.getUsername(), user);
+    return usersMAP;
+  }
+
+  // Read and index the users like the UserStore does, with one of the paths of the UserLoader
+  private static Map<String, User> loadStream(File file, boolean parallel) throws IOException {
+    List<User> users = new ArrayList<>();
+    Map<String, User> usersMAP = new ConcurrentHashMap<>();
+    Consumer<User> index = user -> {
+      users.add(user);
+      usersMAP.put(user.getUsername(), user);
+    };
+
+    if (parallel) UserLoader.parallel(file, index);
+    else UserLoader.stream(file, index);
+
+    return usersMAP;
+  }
+
+  // Search of the last secret word number at startup, with 2 million shared messages: the scan of the messages it replaced (after the load of the users file, measured too) and the read of the game metadata
+  private static void benchStartup() throws Exception {
+    if (!selected("startup.load", "startup.scan", "startup.metadata")) return;
+
+    int users = 50000, games = 40;
+    String messages = "" + users * games;
+    File file = new File("bench-startup.json");
+    Path metadata = Paths.get("bench-metadata.dat");
+    Files.deleteIfExists(file.toPath());
+
+    UserStore store = new UserStore(file);
+    for (int i=0; i<users; i++) store.add(newUser("user" + i, games));
+    store.flush();
+
+    new GameMetadata(games, 0, System.currentTimeMillis()).write(metadata);
+
+    int[] sink = new int[1];
+
+    bench("startup.load", messages, 1, i -> UserStore.read(file));
+    bench("startup.scan", messages, 1, i -> sink[0] += WordleServerMain.getSecretWordNumber(store.getUsers()));
+    bench("startup.metadata", messages, 1000, i -> sink[0] += GameMetadata.read(metadata).getNumber());
+
+    Files.deleteIfExists(file.toPath());
+    Files.deleteIfExists(metadata);
+  }
+
+  // Credentials check of a registered user by username (what checkUser, logger and getCurrentUser do) at 10k, 100k and 1M users, and the scan of the list that it replaced
+  private static void benchLookup() throws Exception {
+    if (!selected("lookup.get", "lookup.scan")) return;
+
+    File file = new File("Lookup.json"); // never written, the users are only added in memory
+
+    for (int users: new int[] {10000, 100000, 1000000}) {
+      UserStore store = new UserStore(file);
+      String[] usernames = new String[users];
+
+      for (int i=0; i<users; i++) {
+        usernames[i] = "lookup" + i;
+        store.add(new User(usernames[i], "password"));
+      }
+
+      List<User> registeredUsersLIST = store.getUsers();
+      int[] found = {0};
+
+      bench("lookup.get", "" + users, 100000, i -> {
+        User user = store.get(usernames[(int) (i * 7919L % users)]);
+        if (user != null && user.getPassword().equals("password")) found[0]++;
+      });
+
+      int scans = 100000000 / users / 10;
+      bench("lookup.scan", "" + users, scans, i -> {
+        String username = usernames[(int) ((i + 0.5) * users / scans)]; // spread over the whole list, half of it is scanned on average
+
+        for (User user: registeredUsersLIST) {
+          if (user.getUsername().equals(username) && user.getPassword().equals("password")) {
+            found[0]++;
+            break;
+          }
+        }
+      });
+    }
+  }
+
+  // Check of a new game: the user didn't play the current secret word yet, at 10k, 100k and 1M registered users
+  private static void benchCheckPlay() throws Exception {
+    if (!selected("checkPlay")) return;
+
+    int registered = 0; // users registered by the previous sizes
+    int[] next = {0}; // next secret word
+    SecretWordEpoch[] epoch = {null};
+
+    for (int users: new int[] {10000, 100000, 1000000}) {
+      String[] usernames = new String[users];
+
+      for (int i=0; i<users; i++) {
+        usernames[i] = "play" + i;
+
+        if (i >= registered) {
+          WordleServerMain.checkUser(usernames[i], "password");
+          WordleServerMain.logger(usernames[i], "password");
+        }
+      }
+
+      registered = users;
+
+      bench("checkPlay", "" + users, users, i -> {
+        if (i == 0) epoch[0] = new SecretWordEpoch(wordsLIST.get(next[0]++ % wordsLIST.size()), next[0]); // every user plays each secret word once
+
+        WordleServerMain.checkPlay(usernames[i], "password", epoch[0]);
+      });
+    }
+  }
+
+  // Statistics update of a finished game (what updateJSON did), persisted in background
+  private static void benchUpdateWin() throws Exception {
+    if (!selected("updateWin")) return;
+
+    List<User> users = new ArrayList<>();
+    for (int i=0; i<10000; i++) {
+      WordleServerMain.checkUser("win" + i, "password");
+      users.add(WordleServerMain.getCurrentUser("win" + i, "password"));
+    }
+
+    bench("updateWin", "" + users.size(), users.size(), i -> WordleServerMain.updateWin(users.get(i), 1 + i % 12));
+  }
+
+  // Leaderboard of 1M users with random statistics: rank of a user, top 10, a finished game moving its user, and the scan that a rank would need without the indexes
+  private static void benchLeaderboard() throws Exception {
+    if (!selected("leaderboard.build", "leaderboard.rank", "leaderboard.top", "leaderboard.update", "leaderboard.scan")) return;
+
+    int count = 1000000;
+    Random random = new Random(42);
+    List<User> users = new ArrayList<>();
+
+    for (int i=0; i<count; i++) {
+      User user = newUser("user" + i, 0);
+      for (int game=random.nextInt(40); game>0; game--) {
+        if (random.nextInt(4) == 0) user.addLoss();
+        else user.addWin(1 + random.nextInt(User.MAX_TRIES));
+      }
+      users.add(user);
+    }
+
+    Leaderboard[] leaderboard = {null};
+    bench("leaderboard.build", "" + count, 1, i -> leaderboard[0] = new Leaderboard(5, users));
+
+    bench("leaderboard.rank", "" + count, 100000, i -> leaderboard[0].ranking(i % 3, users.get(i * 7 % count), 0));
+    bench("leaderboard.top", "" + count, 100000, i -> leaderboard[0].ranking(i % 3, users.get(i * 7 % count), Leaderboard.TOP));
+    bench("leaderboard.update", "" + count, 100000, i -> {
+      User user = users.get(i * 7 % count);
+      int[] scores = leaderboard[0].scores(user);
+      user.addWin(1 + i % User.MAX_TRIES);
+      leaderboard[0].update(user, scores);
+    });
+
+    int[] sink = {0};
+    bench("leaderboard.scan", "" + count, 10, i -> {
+      int streak = users.get(i).getMaxStreak();
+      int better = 0;
+      for (User user: users) if (user.getMaxStreak() > streak) better++;
+      sink[0] += better;
+    });
+  }
+
+  // One guess sent by a client to an in-process Accepter over loopback
+  private static void benchGuessOverLoopback() throws Exception {
+    if (!selected("guessOverLoopback")) return;
+
+    ServerSocket server = new ServerSocket(0);
+    DatagramChannel multicastChannel = DatagramChannel.open();
+    InetSocketAddress multicastGroup = new InetSocketAddress(InetAddress.getByName("228.5.6.7"), server.getLocalPort());
+
+    Thread accepter = new Thread(() -> {
+      try {new WordleServerMain.Accepter(server.accept(), new WordleSession(new SharePublisher(multicastChannel, multicastGroup, 10), words)).run();}
+      catch (IOException e) {e.printStackTrace();}
+    });
+    accepter.setDaemon(true);
+    accepter.start();
+
+    Socket client = new Socket("localhost", server.getLocalPort());
+    BufferedReader sockIn = new BufferedReader(new InputStreamReader(client.getInputStream()));
+    PrintWriter sockOut = new PrintWriter(client.getOutputStream()); // flushed once per request, like the lines of a request were sent together
+
+    sockOut.println("1"); sockOut.println("loopback"); sockOut.println("password"); sockOut.flush(); sockIn.readLine(); // register
+    sockOut.println("2"); sockOut.println("loopback"); sockOut.println("password"); sockOut.flush(); sockIn.readLine(); // login
+
+    int[] game = {0}; // number of the game, every game has a new secret word
+    int guessesPerGame = 12; // the 12th guess ends the game
+
+    bench("guessOverLoopback", "-", guessesPerGame * 50, i -> {
+      if (i % guessesPerGame == 0) {
+        WordleServerMain.rotate(words, game[0]++ % words.size()); // a new secret word, the client can play again
+
+        sockOut.println("4"); sockOut.println("loopback"); sockOut.println("password"); sockOut.flush(); sockIn.readLine(); // play
+        sockOut.println("5");
+      }
+
+      sockOut.println(wordsLIST.get(wordsLIST.size() - 1 - i % guessesPerGame)); // a guess that isn't the secret word
+      sockOut.flush();
+      sockIn.readLine(); // "1"
+      sockIn.readLine(); // hint word
+    });
+
+    client.close();
+    server.close();
+  }
+
+  // Memory and threads of idle sessions: 1k, 10k and 50k connected clients that haven't sent a byte yet, served like "serverMode" fixed or virtual does (a platform thread of a cached pool, or a virtual thread, per client); the clients are in another process (IdleClients), so the file descriptors and the memory of their sockets aren't counted
+  private static void benchIdleSessions() throws Exception {
+    if (!selected("idleSessions.heap", "idleSessions.rss", "idleSessions.threads")) return;
+
+    DatagramChannel multicastChannel = DatagramChannel.open();
+    SharePublisher publisher = new SharePublisher(multicastChannel, new InetSocketAddress(InetAddress.getByName("228.5.6.7"), 4321), 10);
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    int localAddress = 1; // first local address of the next clients, every run uses new ones: the ports of the last run are still in TIME_WAIT
+
+    for (String mode: new String[] {"platform", "virtual"}) {
+      for (int sessions: new int[] {1000, 10000, 50000}) {
+        String param = mode + "/" + sessions;
+        ServerSocket server = new ServerSocket(0, 4096);
+        ExecutorService pool = mode.equals("virtual") ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newCachedThreadPool();
+        AtomicInteger accepted = new AtomicInteger();
+        Throwable[] acceptFailure = {null}; // why the accepter stopped, e.g. the server socket was closed
+
+        Thread accepter = new Thread(() -> {
+          while (true) {
+            try {pool.execute(new WordleServerMain.Accepter(server.accept(), new WordleSession(publisher, words)));}
+            catch (IOException | RejectedExecutionException | OutOfMemoryError e) {
+              acceptFailure[0] = e;
+              break;
+            }
+            accepted.incrementAndGet();
+          }
+        });
+        accepter.setDaemon(true);
+        accepter.start();
+
+        Thread.sleep(1000); // the stacks of the threads of the last run are given back to the system
+        long heapBefore = usedHeap();
+        long rssBefore = residentMemory();
+        int threadsBefore = threads.getThreadCount();
+
+        Process clients = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(), "-cp", System.getProperty("java.class.path"), IdleClients.class.getName(), "" + server.getLocalPort(), "" + sessions, "" + localAddress).redirectErrorStream(true).start();
+        BufferedReader clientsOut = new BufferedReader(new InputStreamReader(clients.getInputStream()));
+        localAddress += IdleClients.addresses(sessions);
+
+        String failure = clientsOut.readLine(); // "connected", or why the clients couldn't all connect
+
+        if (Objects.equals(failure, "connected")) {
+          failure = null;
+
+          while (accepted.get() < sessions) {
+            if (!accepter.isAlive()) {
+              failure = "accepted " + accepted.get() + " sessions: " + acceptFailure[0]; // too many open files or threads for this machine
+              break;
+            }
+
+            Thread.sleep(10);
+          }
+        }
+
+        if (failure == null) {
+          Thread.sleep(500); // every session is blocked reading the first byte
+
+          long heapAfter = usedHeap();
+          long rssAfter = residentMemory();
+          int threadsAfter = threads.getThreadCount();
+
+          report("idleSessions.heap", param, heapAfter - heapBefore, "bytes");
+          report("idleSessions.rss", param, rssAfter - rssBefore, "bytes");
+          report("idleSessions.threads", param, threadsAfter - threadsBefore, "threads");
+        }
+        else {
+          for (String name: new String[] {"idleSessions.heap", "idleSessions.rss", "idleSessions.threads"}) {
+            if (selected(name)) System.out.println(String.format(Locale.ROOT, "%-32s %-10s %14s %12s  %s", name, param, "-", "-", "not run: " + failure));
+          }
+        }
+
+        clients.destroyForcibly(); // every session ends reading the end of the stream (a JVM out of file descriptors may not handle a SIGTERM)
+        clients.waitFor();
+        server.close();
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+      }
+    }
+
+    publisher.close();
+  }
+
+  // Clients of benchIdleSessions: connect to the port and then keep the connections open until killed
+  // Usage: IdleClients <port> <clients> <first local address>
+  static class IdleClients {
+    private static final int CLIENTS_PER_ADDRESS = 20000; // a local address has about 28k ephemeral ports
+
+    // Returns the local addresses used by "clients" clients
+    static int addresses(int clients) {
+      return (clients + CLIENTS_PER_ADDRESS - 1) / CLIENTS_PER_ADDRESS;
+    }
+
+    public static void main(String[] args) throws Exception {
+      int port = Integer.parseInt(args[0]);
+      int clients = Integer.parseInt(args[1]);
+      int firstAddress = Integer.parseInt(args[2]);
+      List<Socket> sockets = new ArrayList<>();
+
+      try {
+        for (int i=0; i<clients; i++) {
+          int address = firstAddress + i / CLIENTS_PER_ADDRESS; // 127.0.0.1 and up, the whole 127/8 is the loopback
+
+          Socket client = new Socket();
+          sockets.add(client);
+          client.setReuseAddress(true); // a local port is chosen for every address, not for all of them
+          client.bind(new InetSocketAddress(InetAddress.getByName("127.0." + (address >> 8) + "." + (address & 255)), 0));
+          client.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        }
+
+        System.out.println("connected");
+      }
+      catch (IOException e) {System.out.println("connected " + (sockets.size() - 1) + " clients: " + e);} // e.g. too many open files
+
+      System.out.flush();
+      Thread.sleep(Long.MAX_VALUE); // until killed
+    }
+  }
+
+  // Report a value measured once, with no error
+  private static void report(String name, String param, long value, String units) {
+    if (!selected(name)) return;
+
+    System.out.println(String.format(Locale.ROOT, "%-32s %-10s %14d %12s  %s", name, param, value, "-", units));
+  }
+
+  // Returns the memory of the process resident in RAM (the stacks of the platform threads aren't in the heap), 0 if the system doesn't tell it
+  private static long residentMemory() throws IOException {
+    Path status = Paths.get("/proc/self/status");
+    if (!Files.exists(status)) return 0;
+
+    for (String line: Files.readAllLines(status)) {
+      if (line.startsWith("VmRSS:")) return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024; // in kB
+    }
+
+    return 0;
+  }
+
+  // A shared result on the session thread: one send per message (what the session did) or the hand-off to the SharePublisher, which batches them
+  private static void benchShare() throws Exception {
+    if (!selected("share.send", "share.publish")) return;
+
+    DatagramChannel receiver = DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)); // never read, the datagrams it can't keep are dropped
+    InetSocketAddress group = (InetSocketAddress) receiver.getLocalAddress();
+    DatagramChannel channel = DatagramChannel.open();
+    String[] messages = new String[1024];
+    for (int i=0; i<messages.length; i++) messages[i] = "user" + i + ": Wordle " + (1000 + i) + " " + (1 + i % 12) + "/12";
+
+    bench("share.send", "-", 100000, i -> channel.send(ByteBuffer.wrap(messages[i % messages.length].getBytes(StandardCharsets.UTF_8)), group));
+
+    try (SharePublisher publisher = new SharePublisher(channel, group, 10)) {
+      bench("share.publish", "10ms", 100000, i -> publisher.share(messages[i % messages.length]));
+    }
+
+    channel.close();
+    receiver.close();
+  }
+
+  // Recording of a request in the server metrics, the cost added to every request
+  private static void benchMetrics() throws Exception {
+    ServerMetrics metrics = new ServerMetrics();
+    long[] latencies = new long[4096];
+    Random random = new Random(42);
+    for (int i=0; i<latencies.length; i++) latencies[i] = (long) Math.exp(8 + 4 * random.nextDouble()); // 3 us to 160 us
+
+    bench("metrics.record", "-", 1000000, i -> metrics.record(1 + i % ServerMetrics.GUESS, latencies[i % latencies.length]));
+    bench("metrics.snapshot", "-", 100, i -> metrics.snapshot());
+  }
+
+  // Recording of a finished game in the statistics of its secret word, the cost added to every game
+  private static void benchWordStatistics() throws Exception {
+    WordStatistics statistics = new WordStatistics();
+
+    bench("wordStatistics.record", "-", 1000000, i -> {
+      if (i % 4 == 0) statistics.failed();
+      else statistics.solved(1 + i % User.MAX_TRIES);
+    });
+    bench("wordStatistics.snapshot", "-", 10000, i -> statistics.snapshot());
+  }
+
+  // Create a user with "games" played words and shared messages
+  private static User newUser(String username, int games) {
+    User user = new User(username, "password");
+
+    for (int i=0; i<games; i++) {
+      user.getPlayedWords().add(i); // the dictionary of the users is words.txt too
+      user.getSharedMessages().add("Wordle " + (i + 1) + " " + (1 + i % 12) + "/12");
+    }
+
+    return user;
+  }
+}
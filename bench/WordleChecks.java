@@ -0,0 +1,495 @@
+// I/O imports
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// Connection imports
+import java.net.ServerSocket;
+import java.net.Socket;
+
+// Utility imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// GSON imports
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+
+/*
+ * Checks of the behaviours that a single run of the server can't show: many threads working on the same
+ * users at once, and randomized inputs compared with a simple reference implementation. Every check prints
+ * one line, PASS or FAIL with what was checked, and the exit status is 1 if one of them failed.
+ * Run it with bench/check.sh (it must run in a scratch directory with a copy of words.txt), optionally
+ * passing a regular expression to select the checks by name.
+ */
+public class WordleChecks {
+  private static final int THREADS = 16;
+
+  private static String filter = ".*"; // checks to run
+  private static List<String> wordsLIST; // words of words.txt
+  private static boolean failed = false; // one of the checks failed
+
+  public static void main(String[] args) throws Exception {
+    if (args.length > 0) filter = args[0];
+
+    wordsLIST = Files.readAllLines(Paths.get("words.txt"));
+
+    checkLocks();
+    checkHints();
+    checkRotation();
+    checkLoader();
+    checkBackpressure();
+
+    System.exit(failed ? 1 : 0); // stop the server threads started by the checks
+  }
+
+  // Returns true if the check is selected by the filter
+  private static boolean selected(String name) {
+    return name.matches(filter);
+  }
+
+  // Report the result of a check
+  private static void report(String name, boolean passed, String details) {
+    if (!passed) failed = true;
+    System.out.println(String.format(Locale.ROOT, "%-6s %-24s %s", passed ? "PASS" : "FAIL", name, details));
+  }
+
+  // Run "task" on THREADS threads at once, "task" gets the number of the thread
+  private static void parallel(TaskOfThread task) throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    List<Future<Object>> results = new ArrayList<>();
+
+    for (int t=0; t<THREADS; t++) {
+      int thread = t;
+      results.add(pool.submit((Callable<Object>) () -> {
+        task.run(thread);
+        return null;
+      }));
+    }
+
+    try {for (Future<Object> result: results) result.get();} // rethrow the failure of a thread
+    finally {pool.shutdown();}
+  }
+
+  // The work of one thread of parallel()
+  private interface TaskOfThread {
+    void run(int thread) throws Exception;
+  }
+
+  // Striped user locks: all the threads register, log in, start games, win, lose and share on the same few users at once, then every counter must be exactly the sum of what the threads did
+  private static void checkLocks() throws Exception {
+    if (!selected("locks")) return;
+
+    int users = 8; // few users, many threads on each of them
+    int rounds = 100000; // operations of every thread
+    int words = 200; // secret words played by every user
+    String[] usernames = new String[users];
+    for (int u=0; u<users; u++) usernames[u] = "locks" + u;
+
+    AtomicIntegerArray registered = new AtomicIntegerArray(users); // successful registrations, by user
+    AtomicIntegerArray started = new AtomicIntegerArray(users); // successful play requests, by user
+    AtomicIntegerArray wins = new AtomicIntegerArray(users);
+    AtomicIntegerArray losses = new AtomicIntegerArray(users);
+    AtomicIntegerArray shares = new AtomicIntegerArray(users);
+    AtomicIntegerArray[] tries = new AtomicIntegerArray[User.MAX_TRIES + 1]; // games won in "tries" tries, by user
+    for (int t=1; t<tries.length; t++) tries[t] = new AtomicIntegerArray(users);
+
+    // Every thread tries to register and log in every user, only one registration per user can succeed
+    parallel(thread -> {
+      for (int u=0; u<users; u++) {
+        if (WordleServerMain.checkUser(usernames[u], "password") == 1) registered.incrementAndGet(u);
+        WordleServerMain.logger(usernames[u], "password");
+      }
+    });
+
+    List<SecretWordEpoch> epochs = new ArrayList<>();
+    for (int w=0; w<words; w++) epochs.add(new SecretWordEpoch(wordsLIST.get(w), w + 1));
+
+    parallel(thread -> {
+      Random random = new Random(thread);
+
+      for (int round=0; round<rounds; round++) {
+        int u = random.nextInt(users);
+        User user = WordleServerMain.getCurrentUser(usernames[u], "password");
+        int operation = random.nextInt(4);
+
+        if (operation == 0) {
+          if (WordleServerMain.checkPlay(usernames[u], "password", epochs.get(random.nextInt(words))) == 1) started.incrementAndGet(u);
+        }
+        else if (operation == 1) {
+          int t = 1 + random.nextInt(User.MAX_TRIES);
+          WordleServerMain.updateWin(user, t);
+          wins.incrementAndGet(u);
+          tries[t].incrementAndGet(u);
+        }
+        else if (operation == 2) {
+          WordleServerMain.updateLoss(user);
+          losses.incrementAndGet(u);
+        }
+        else {
+          WordleServerMain.addSharedMessage(user, "Wordle " + round + " 1/12");
+          shares.incrementAndGet(u);
+        }
+      }
+    });
+
+    int wrong = 0; // users whose counters don't match
+    StringBuilder first = new StringBuilder(); // the first wrong user
+
+    for (int u=0; u<users; u++) {
+      User user = WordleServerMain.getCurrentUser(usernames[u], "password");
+      int played = 0; // secret words of the check in the played words
+      for (int w=0; w<words; w++) if (user.getPlayedWords().contains(WordDictionary.shared().indexOf(wordsLIST.get(w)))) played++;
+
+      boolean right = registered.get(u) == 1;
+      right &= user.getGames() == wins.get(u) + losses.get(u);
+      right &= user.getWins() == wins.get(u);
+      right &= user.getGames() >= user.getWins();
+      right &= user.getMaxStreak() >= user.getCurrentStreak() && user.getMaxStreak() <= user.getWins();
+      for (int t=1; t<tries.length; t++) right &= user.getGuessCount(t) == tries[t].get(u);
+      right &= user.getSharedMessages().size() == shares.get(u);
+      right &= played == started.get(u); // every secret word accepted once per user
+
+      if (!right && wrong++ == 0) {
+        first.append(String.format(Locale.ROOT, ", first %s: registered %d, games %d/%d, wins %d/%d, shares %d/%d, played %d/%d", usernames[u], registered.get(u), user.getGames(), wins.get(u) + losses.get(u), user.getWins(), wins.get(u), user.getSharedMessages().size(), shares.get(u), played, started.get(u)));
+      }
+    }
+
+    report("locks", wrong == 0, String.format(Locale.ROOT, "%d threads, %d users, %d operations: %d users with wrong counters%s", THREADS, users, THREADS * rounds, wrong, first));
+  }
+
+  // Hint engine: random secret and guessed words, many with repeated letters, against the two-pass reference below; one engine for all the words, like a session
+  private static void checkHints() throws Exception {
+    if (!selected("hints")) return;
+
+    int pairs = 1000000;
+    Random random = new Random(42);
+    HintEngine engine = new HintEngine();
+    int wrong = 0;
+    String first = ""; // the first wrong hint
+
+    for (int p=0; p<pairs; p++) {
+      String secretWord, guessedWord;
+
+      if (p % 4 == 0) { // words of the dictionary
+        secretWord = wordsLIST.get(random.nextInt(wordsLIST.size()));
+        guessedWord = wordsLIST.get(random.nextInt(wordsLIST.size()));
+      }
+      else { // random words of 2, 3 or 4 letters only, so every letter is repeated
+        int letters = 1 + p % 4;
+        secretWord = randomWord(random, letters);
+        guessedWord = randomWord(random, letters);
+      }
+
+      String hint = new String(engine.compute(new SecretWordEpoch(secretWord, 1), guessedWord));
+      String expected = referenceHint(secretWord, guessedWord);
+
+      if (!hint.equals(expected) && wrong++ == 0) first = String.format(Locale.ROOT, ", first %s on %s: %s instead of %s", guessedWord, secretWord, hint, expected);
+    }
+
+    report("hints", wrong == 0, String.format(Locale.ROOT, "%d random words: %d wrong hints%s", pairs, wrong, first));
+  }
+
+  // Secret word rotation: players keep playing while the secret word changes thousands of times, and the hints of every game must all come from one of the secret words
+  private static void checkRotation() throws Exception {
+    if (!selected("rotation")) return;
+
+    int players = THREADS - 1; // one thread rotates
+    int rotations = 3000;
+    WordDictionary dictionary = WordDictionary.shared();
+    Set<String> secretWords = ConcurrentHashMap.newKeySet(); // every word that was the secret word
+    AtomicBoolean rotating = new AtomicBoolean(true);
+    AtomicInteger games = new AtomicInteger(); // games ended by a win or a loss
+    AtomicInteger stopped = new AtomicInteger(); // games stopped by a rotation
+    AtomicInteger mixed = new AtomicInteger(); // games whose hints can't come from a single secret word
+    String[] first = {""}; // the first mixed game
+
+    parallel(thread -> {
+      if (thread == players) { // the rotation thread
+        Random random = new Random(thread);
+
+        for (int r=0; r<rotations; r++) {
+          int index = random.nextInt(dictionary.size());
+          secretWords.add(dictionary.get(index)); // before it's published
+          WordleServerMain.rotate(dictionary, index);
+          Thread.sleep(0, 200000); // a few guesses of every player
+        }
+
+        rotating.set(false);
+        return;
+      }
+
+      Random random = new Random(thread);
+      WordleSession session = new WordleSession(null, dictionary); // never shares
+      String username = "rotation" + thread;
+      List<String> out = new ArrayList<>();
+
+      send(session, out, "1", username, "password");
+      send(session, out, "2", username, "password");
+
+      while (rotating.get()) {
+        if (!send(session, out, "4", username, "password").get(0).equals("1")) { // already played the current secret word
+          Thread.yield();
+          continue;
+        }
+
+        List<String> guesses = new ArrayList<>();
+        List<String> hints = new ArrayList<>();
+        boolean over = send(session, out, "5").contains("0"); // stopped before the first guess
+
+        while (!over) {
+          String guessedWord = wordsLIST.get(random.nextInt(wordsLIST.size()));
+          List<String> response = send(session, out, guessedWord);
+
+          if (response.get(0).equals("1")) {
+            guesses.add(guessedWord);
+            hints.add(response.get(1));
+          }
+
+          over = response.contains("0") || response.get(0).equals("1") && response.get(1).equals("!".repeat(WordDictionary.WORD_LENGTH)) || guesses.size() == User.MAX_TRIES;
+          if (over) (response.contains("0") ? stopped : games).incrementAndGet();
+        }
+
+        boolean consistent = guesses.isEmpty();
+        for (String secretWord: secretWords) {
+          if (consistent) break;
+
+          consistent = true;
+          for (int g=0; g<guesses.size(); g++) consistent &= referenceHint(secretWord, guesses.get(g)).equals(hints.get(g));
+        }
+
+        if (!consistent && mixed.getAndIncrement() == 0) first[0] = ", first " + guesses + " " + hints;
+      }
+    });
+
+    report("rotation", mixed.get() == 0, String.format(Locale.ROOT, "%d rotations, %d players: %d games ended, %d stopped by a rotation, %d with hints of more than one word%s", rotations, players, games.get(), stopped.get(), mixed.get(), first[0]));
+  }
+
+  // Startup load: users files with null entries, strings full of quotes, braces and backslashes, users far longer than the buffers of the reader
+  // and more users than a batch, and the users read by both paths of the UserLoader (one stream, parallel batches) must be the ones written, in order
+  private static void checkLoader() throws Exception {
+    if (!selected("loader")) return;
+
+    int files = 20;
+    Random random = new Random(42);
+    Gson pretty = new GsonBuilder().setPrettyPrinting().create(); // how the server writes the files
+    Gson gson = new Gson();
+    File file = new File("check-loader.json");
+    int users = 0;
+    int nulls = 0;
+    int wrong = 0; // files read differently from how they were written
+    String first = ""; // the first wrong file
+
+    for (int f=0; f<files; f++) {
+      List<String> written = new ArrayList<>(); // every user written, as compact JSON
+
+      try (JsonWriter writer = new JsonWriter(new FileWriter(file))) {
+        writer.setIndent("  ");
+        writer.beginArray();
+
+        for (int u=random.nextInt(3000); u>0; u--) { // up to a few batches of the parallel path
+          if (random.nextInt(20) == 0) { // an entry that isn't a user
+            writer.nullValue();
+            nulls++;
+            continue;
+          }
+
+          User user = new User(randomText(random, 1 + random.nextInt(User.MAX_USERNAME)), randomText(random, random.nextInt(200) == 0 ? 70000 + random.nextInt(70000) : random.nextInt(100)));
+          user.setStatistics(random.nextInt(1000), random.nextInt(1000), random.nextInt(100), random.nextInt(100));
+          for (int t=1; t<=User.MAX_TRIES; t++) user.setGuessCount(t, random.nextInt(100));
+          for (int w=random.nextInt(random.nextInt(50) == 0 ? 3000 : 50); w>0; w--) user.getPlayedWords().add(random.nextInt(wordsLIST.size()));
+          for (int m=random.nextInt(5); m>0; m--) user.getSharedMessages().add(randomText(random, random.nextInt(2000)));
+
+          pretty.toJson(user, User.class, writer);
+          written.add(gson.toJson(user, User.class));
+          users++;
+        }
+
+        writer.endArray();
+      }
+
+      for (boolean parallel: new boolean[] {false, true}) {
+        List<String> read = new ArrayList<>();
+        String error = ""; // the file was refused
+        int count;
+
+        try {count = load(parallel, file, user -> read.add(gson.toJson(user, User.class)));}
+        catch (IOException e) {
+          count = -1;
+          error = " (" + e.getMessage() + ")";
+        }
+
+        if ((count != read.size() || !read.equals(written)) && wrong++ == 0) first = String.format(Locale.ROOT, ", first file %d (%s): %d users written, %d read%s", f, parallel ? "parallel" : "stream", written.size(), read.size(), error);
+      }
+    }
+
+    // The files of no users: what Gson writes for an empty list, an empty array and an array of nulls
+    for (String json: new String[] {"null", "[]", "[null]", "[null, null]"}) {
+      Files.writeString(file.toPath(), json);
+
+      for (boolean parallel: new boolean[] {false, true}) {
+        String result;
+        try {result = load(parallel, file, user -> {}) + " users read";}
+        catch (IOException e) {result = e.getMessage();}
+
+        if (!result.equals("0 users read") && wrong++ == 0) first = ", first file " + json + " (" + (parallel ? "parallel" : "stream") + "): " + result;
+      }
+    }
+
+    Files.deleteIfExists(file.toPath());
+
+    report("loader", wrong == 0, String.format(Locale.ROOT, "%d files, %d users, %d null entries, read by both paths: %d read wrong%s", files + 4, users, nulls, wrong, first));
+  }
+
+  // Read a users file with one of the paths of the UserLoader
+  private static int load(boolean parallel, File file, Consumer<User> consumer) throws IOException {
+    return parallel ? UserLoader.parallel(file, consumer) : UserLoader.stream(file, consumer);
+  }
+
+  // Backpressure of the "nio" mode: a client sends a flood of requests without reading the responses, the server must stop reading
+  // them (so the client's sends stall) instead of queueing every response, and once the client reads it must get all of them
+  private static void checkBackpressure() throws Exception {
+    if (!selected("backpressure")) return;
+
+    int requests = 8 << 20; // 40 MB of requests, far more than the socket buffers hold
+    byte[] request = "10\nx\n".getBytes(StandardCharsets.UTF_8); // statistics of no secret word, answered "-1"
+    int port;
+    try (ServerSocket free = new ServerSocket(0)) {port = free.getLocalPort();}
+
+    try (NioServer server = new NioServer(port, 1, () -> new WordleSession(null, WordDictionary.shared()))) {
+      Thread accepter = new Thread(server, "backpressure-accepter");
+      accepter.setDaemon(true);
+      accepter.start();
+
+      try (Socket client = new Socket("localhost", port)) {
+        client.setSoTimeout(60000);
+
+        // One request answered first, so the heap measured before the flood already holds the connection and its session
+        client.getOutputStream().write(request);
+        for (int b=0; b != '\n'; ) b = client.getInputStream().read();
+        long before = usedHeap();
+
+        AtomicLong sent = new AtomicLong(); // requests written to the socket
+        AtomicBoolean done = new AtomicBoolean(false);
+
+        Thread writer = new Thread(() -> {
+          try {
+            OutputStream out = new BufferedOutputStream(client.getOutputStream(), 8192);
+            for (int r=1; r<requests; r++) { // the first request was already answered
+              out.write(request);
+              if (r % 1024 == 1023) {
+                out.flush();
+                sent.set(r + 1);
+              }
+            }
+            out.flush();
+            sent.set(requests);
+            done.set(true);
+          }
+          catch (Exception e) {} // the socket was closed by a failed check
+        }, "backpressure-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        // Wait until the sends stall (or all of them were accepted, the server read everything without anyone reading the responses)
+        long last = -1;
+        while (!done.get() && sent.get() != last) {
+          last = sent.get();
+          Thread.sleep(2000);
+        }
+
+        boolean stalled = !done.get();
+        long stalledAt = sent.get();
+        long retained = usedHeap() - before; // responses queued by the server
+
+        // Read every response, the stalled requests must be handled as the responses are read
+        InputStream in = client.getInputStream();
+        byte[] buffer = new byte[65536];
+        long responses = 1; // the first request
+        int read;
+        while (responses < requests && (read = in.read(buffer)) != -1) {
+          for (int i=0; i<read; i++) if (buffer[i] == '\n') responses++;
+        }
+
+        report("backpressure", stalled && retained < (1 << 20) && responses == requests, String.format(Locale.ROOT, "%d requests never read by the client: sends %s after %d MB with %d KB of heap retained, then %d responses", requests, stalled ? "stalled" : "never stalled", stalledAt * request.length >> 20, retained >> 10, responses));
+      }
+    }
+  }
+
+  // Returns the heap in use after a full collection
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i=0; i<3; i++) System.gc();
+
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  // Returns random text full of the characters a JSON string must escape or a scan of the document could mistake for structure
+  private static String randomText(Random random, int length) {
+    String special = "\"{}[],:\\/\n\t\u00e8\u2603";
+    char[] text = new char[length];
+    for (int i=0; i<length; i++) text[i] = random.nextBoolean() ? special.charAt(random.nextInt(special.length())) : (char) ('a' + random.nextInt(26));
+
+    return new String(text);
+  }
+
+  // Send the lines of a text request to a session, returns the response lines
+  private static List<String> send(WordleSession session, List<String> out, String... lines) throws Exception {
+    out.clear();
+    for (String line: lines) session.onLine(line, out::add);
+
+    return out;
+  }
+
+  // Returns a random word made of the first "letters" letters of the alphabet
+  private static String randomWord(Random random, int letters) {
+    char[] word = new char[WordDictionary.WORD_LENGTH];
+    for (int i=0; i<word.length; i++) word[i] = (char) ('a' + random.nextInt(letters));
+
+    return new String(word);
+  }
+
+  // The hint word computed the simple way: first the letters in the correct place, then, from left to right, a letter of the secret word not matched yet is marked "?" once
+  private static String referenceHint(String secretWord, String guessedWord) {
+    char[] hint = new char[guessedWord.length()];
+    int[] unmatched = new int[26]; // letters of the secret word not in the correct place of the guessed word
+
+    for (int i=0; i<hint.length; i++) {
+      if (guessedWord.charAt(i) == secretWord.charAt(i)) hint[i] = '!';
+      else unmatched[secretWord.charAt(i) - 'a']++;
+    }
+
+    for (int i=0; i<hint.length; i++) {
+      if (hint[i] == '!') continue;
+
+      int letter = guessedWord.charAt(i) - 'a';
+      if (unmatched[letter] > 0) {
+        hint[i] = '?';
+        unmatched[letter]--;
+      }
+      else hint[i] = '-';
+    }
+
+    return new String(hint);
+  }
+}
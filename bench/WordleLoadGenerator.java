@@ -0,0 +1,372 @@
+// I/O imports
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// Connection imports
+import java.net.Socket;
+
+// Utility imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Headless load generator: N players connect to the server named in ClientConfig.txt and use the request
+ * functions of WordleClientMain like the interactive client does. Every player registers (or finds itself
+ * already registered), logs in and, until the end of the run, plays the current secret word with a guess
+ * strategy, shares the result and asks its statistics; then it logs out.
+ * Run it from the bin folder with bench/load.sh, passing the settings as key=value arguments:
+ *   players=100     number of concurrent players
+ *   duration=60     length of the run in seconds
+ *   strategy=solver random (random words of the dictionary) or solver (only words compatible with the hints)
+ *   invalid=0       fraction of guesses replaced by a word that isn't in the dictionary
+ *   think=100       milliseconds a player waits before asking again to play the same secret word
+ *   prefix=load     prefix of the usernames, the players of a second run log in as the same users
+ *   seed=42         seed of the random choices
+ *   protocol=text   text or binary (BinaryProtocol)
+ *   pipeline=false  with the binary protocol, send play and start, then share and statistics, without waiting in between
+ * The report has one line per request type with count, throughput and latency percentiles in microseconds,
+ * and a line with the wall time of the whole games (from the play request to the statistics response),
+ * so the reports of two runs can be compared with diff.
+ */
+public class WordleLoadGenerator {
+  private static final String[] REQUESTS = {"register", "login", "play", "guess", "share", "statistics", "logout", "game"}; // request types, in report order
+  private static final int REGISTER = 0, LOGIN = 1, PLAY = 2, GUESS = 3, SHARE = 4, STATISTICS = 5, LOGOUT = 6, GAME = 7;
+
+  private static List<String> wordsLIST; // words of words.txt, the guesses
+  private static List<SecretWordEpoch> epochs; // every word of words.txt as a secret word, for the solver
+
+  public static void main(String[] args) throws Exception {
+    Properties settings = new Properties();
+    for (String arg: args) settings.load(new StringReader(arg)); // key=value arguments
+
+    int players = Integer.parseInt(settings.getProperty("players", "100"));
+    int duration = Integer.parseInt(settings.getProperty("duration", "60"));
+    String strategy = settings.getProperty("strategy", "solver");
+    double invalid = Double.parseDouble(settings.getProperty("invalid", "0"));
+    int think = Integer.parseInt(settings.getProperty("think", "100"));
+    String prefix = settings.getProperty("prefix", "load");
+    long seed = Long.parseLong(settings.getProperty("seed", "42"));
+    boolean binary = settings.getProperty("protocol", "text").equals("binary");
+    boolean pipeline = binary && Boolean.parseBoolean(settings.getProperty("pipeline", "false"));
+
+    if (!strategy.equals("random") && !strategy.equals("solver")) throw new IllegalArgumentException("unknown strategy: " + strategy);
+
+    BufferedReader configReader = new BufferedReader(new InputStreamReader(new FileInputStream("ClientConfig.txt"))); // client configuration file reader
+    String hostname = configReader.readLine(); // read the hostname from the configuration file
+    int port = Integer.parseInt(configReader.readLine()); // read the port from the configuration file
+    configReader.close();
+
+    wordsLIST = Files.readAllLines(Paths.get("words.txt"));
+    epochs = new ArrayList<>();
+    for (String word: wordsLIST) epochs.add(new SecretWordEpoch(word, 0));
+
+    long deadline = System.nanoTime() + duration * 1_000_000_000L;
+    AtomicInteger errors = new AtomicInteger(); // players stopped by an error
+
+    // Start the players
+    Player[] player = new Player[players];
+    Thread[] threads = new Thread[players];
+    long start = System.nanoTime();
+
+    for (int i=0; i<players; i++) {
+      GuessStrategy guesses = strategy.equals("solver") ? new SolverStrategy(new Random(seed + i)) : new RandomStrategy(new Random(seed + i));
+
+      player[i] = new Player(hostname, port, binary, pipeline, prefix + i, guesses, invalid, think, new Random(seed - i), deadline, errors);
+      threads[i] = new Thread(player[i], "player-" + i);
+      threads[i].start();
+    }
+
+    for (Thread thread: threads) thread.join();
+
+    double elapsed = (System.nanoTime() - start) / 1e9;
+
+    // Merge the latencies of the players and report them
+    System.out.println("# players=" + players + " duration=" + duration + " strategy=" + strategy + " invalid=" + invalid + " think=" + think + " protocol=" + (binary ? "binary" : "text") + " pipeline=" + pipeline);
+    System.out.println(String.format(Locale.ROOT, "%-12s %10s %12s %10s %10s %10s", "Request", "count", "ops/s", "p50(us)", "p99(us)", "p999(us)"));
+
+    long total = 0;
+    for (int r=0; r<REQUESTS.length; r++) {
+      if (r == GAME) System.out.println(String.format(Locale.ROOT, "%-12s %10d %12.1f", "total", total, total / elapsed)); // games aren't requests
+
+      Samples merged = new Samples();
+      for (Player p: player) merged.addAll(p.latencies[r]);
+
+      long[] sorted = merged.sorted();
+      if (r != GAME) total += sorted.length;
+
+      System.out.println(String.format(Locale.ROOT, "%-12s %10d %12.1f %10d %10d %10d", REQUESTS[r], sorted.length, sorted.length / elapsed,
+        percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999)));
+    }
+
+    int games = 0, wins = 0, inconsistencies = 0;
+    for (Player p: player) {
+      games += p.games;
+      wins += p.wins;
+      inconsistencies += p.guesses.inconsistencies();
+    }
+
+    System.out.println("# games=" + games + " wins=" + wins + " inconsistencies=" + inconsistencies + " errors=" + errors.get());
+  }
+
+  // Returns the "q" quantile of sorted latencies, in microseconds
+  private static long percentile(long[] sorted, double q) {
+    if (sorted.length == 0) return 0;
+
+    int index = (int) Math.ceil(q * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1000;
+  }
+
+  // A simulated player with its own connection
+  private static class Player implements Runnable {
+    private final String hostname;
+    private final int port;
+    private final boolean binary;
+    private final boolean pipeline;
+    private final String username;
+    private final String password = "password";
+    private final GuessStrategy guesses;
+    private final double invalid;
+    private final int think;
+    private final Random random;
+    private final long deadline;
+    private final AtomicInteger errors;
+
+    private final Samples[] latencies = new Samples[REQUESTS.length]; // latencies of each request type, in nanoseconds
+    private int games = 0; // games played to the end
+    private int wins = 0; // games won
+
+    public Player(String hostname, int port, boolean binary, boolean pipeline, String username, GuessStrategy guesses, double invalid, int think, Random random, long deadline, AtomicInteger errors) {
+      this.hostname = hostname;
+      this.port = port;
+      this.binary = binary;
+      this.pipeline = pipeline;
+      this.username = username;
+      this.guesses = guesses;
+      this.invalid = invalid;
+      this.think = think;
+      this.random = random;
+      this.deadline = deadline;
+      this.errors = errors;
+
+      for (int r=0; r<REQUESTS.length; r++) this.latencies[r] = new Samples();
+    }
+
+    public void run() {
+      try (Socket client = new Socket(this.hostname, this.port)) {
+        client.setTcpNoDelay(true); // every line of a request is a separate write, don't wait for the server's delayed ACK
+        BufferedReader sockIn = new BufferedReader(new InputStreamReader(client.getInputStream()));
+        PrintWriter sockOut = new PrintWriter(client.getOutputStream(), true);
+        BinaryClient binaryClient = this.binary ? new BinaryClient(client) : null;
+
+        long start = System.nanoTime();
+        if (this.binary) binaryClient.register(this.username, this.password);
+        else WordleClientMain.register(this.username, this.password, client, sockIn, sockOut); // "0" if a previous run registered it
+        start = record(REGISTER, start);
+
+        int login = this.binary ? binaryClient.login(this.username, this.password) : WordleClientMain.login(this.username, this.password, client, sockIn, sockOut);
+        if (login != 1) throw new IOException(this.username + " can't log in");
+        record(LOGIN, start);
+
+        while (System.nanoTime() < this.deadline) {
+          long gameStart = System.nanoTime();
+          int play;
+
+          if (this.pipeline) {
+            CompletableFuture<Integer> playing = binaryClient.playWordleAsync(this.username, this.password);
+            CompletableFuture<Integer> starting = binaryClient.startGameAsync(); // refused by the server if the play request is refused
+
+            play = BinaryClient.await(playing);
+            record(PLAY, gameStart);
+            BinaryClient.await(starting);
+          }
+          else {
+            play = this.binary ? binaryClient.playWordle(this.username, this.password) : WordleClientMain.playWordle(this.username, this.password, client, sockIn, sockOut);
+            record(PLAY, gameStart);
+          }
+
+          if (play != 1) { // already played this secret word, wait for the next one
+            Thread.sleep(this.think);
+            continue;
+          }
+
+          if (!play(client, sockIn, sockOut, binaryClient)) continue; // the secret word changed during the game
+
+          start = System.nanoTime();
+
+          if (this.pipeline) {
+            CompletableFuture<Integer> sharing = binaryClient.shareAsync();
+            CompletableFuture<List<Integer>> statistics = binaryClient.sendMeStatisticsAsync(this.username, this.password);
+
+            BinaryClient.await(sharing);
+            record(SHARE, start);
+            BinaryClient.await(statistics);
+            record(STATISTICS, start);
+          }
+          else {
+            if (this.binary) binaryClient.share();
+            else WordleClientMain.share(sockOut);
+            start = record(SHARE, start);
+
+            if (this.binary) binaryClient.sendMeStatistics(this.username, this.password);
+            else WordleClientMain.sendMeStatistics(this.username, this.password, client, sockIn, sockOut);
+            record(STATISTICS, start);
+          }
+
+          record(GAME, gameStart);
+        }
+
+        start = System.nanoTime();
+        if (this.binary) binaryClient.logout(this.username, this.password);
+        else WordleClientMain.logout(this.username, this.password, client, sockIn, sockOut);
+        record(LOGOUT, start);
+      }
+      catch (IOException | RuntimeException e) {
+        this.errors.incrementAndGet();
+        System.err.println(this.username + ": " + e);
+      }
+      catch (InterruptedException e) {}
+    }
+
+    // Play a game to the end; returns false if it was stopped because the secret word changed
+    private boolean play(Socket client, BufferedReader sockIn, PrintWriter sockOut, BinaryClient binaryClient) throws IOException {
+      if (!this.binary) sockOut.println("5"); // send the request type to the server
+      else if (!this.pipeline) binaryClient.startGame(); // already sent with the play request if pipelining
+      this.guesses.reset();
+
+      int tries = 0;
+      while (tries < 12) {
+        boolean sendInvalid = this.random.nextDouble() < this.invalid;
+        String guessedWord = sendInvalid ? "zzzzzzzzzz" : this.guesses.next();
+
+        long start = System.nanoTime();
+        int response = this.binary ? binaryClient.sendWord(guessedWord) : WordleClientMain.sendWord(client, sockIn, sockOut, guessedWord);
+
+        if (response == 0) { // the secret word changed
+          record(GUESS, start);
+          return false;
+        }
+
+        if (response == -1) { // not in the words list, it doesn't count as a try
+          record(GUESS, start);
+          continue;
+        }
+
+        String hintWord = this.binary ? binaryClient.getHintWord() : sockIn.readLine(); // read the hint word from server
+        record(GUESS, start);
+
+        if (hintWord.equals("!!!!!!!!!!")) {
+          this.wins++;
+          break;
+        }
+
+        this.guesses.hint(guessedWord, hintWord);
+        tries++;
+      }
+
+      this.games++;
+      return true;
+    }
+
+    // Record the latency of a request started at "start", returns the current time
+    private long record(int request, long start) {
+      long now = System.nanoTime();
+      this.latencies[request].add(now - start);
+      return now;
+    }
+  }
+
+  // Chooses the guessed words of a game
+  private interface GuessStrategy {
+    void reset(); // a new game starts
+    String next(); // next guessed word
+    void hint(String guessedWord, String hintWord); // hint word received for a guess
+    int inconsistencies(); // hints received that no secret word of the dictionary could give, together with the previous hints of the game
+  }
+
+  // Random words of the dictionary
+  private static class RandomStrategy implements GuessStrategy {
+    private final Random random;
+
+    public RandomStrategy(Random random) {
+      this.random = random;
+    }
+
+    public void reset() {}
+
+    public String next() {
+      return wordsLIST.get(this.random.nextInt(wordsLIST.size()));
+    }
+
+    public void hint(String guessedWord, String hintWord) {}
+
+    public int inconsistencies() {
+      return 0; // the hints aren't checked
+    }
+  }
+
+  // Random words among the ones still compatible with the hints received, like a careful player
+  private static class SolverStrategy implements GuessStrategy {
+    private final Random random;
+    private final HintEngine hints = new HintEngine();
+    private final List<SecretWordEpoch> candidates = new ArrayList<>(); // words that can still be the secret word
+    private int inconsistencies = 0;
+
+    public SolverStrategy(Random random) {
+      this.random = random;
+    }
+
+    public void reset() {
+      this.candidates.clear();
+      this.candidates.addAll(epochs);
+    }
+
+    public String next() {
+      if (this.candidates.isEmpty()) reset(); // the secret word isn't a word of our dictionary
+      return this.candidates.get(this.random.nextInt(this.candidates.size())).getWord();
+    }
+
+    public void hint(String guessedWord, String hintWord) {
+      // Keep the words that would have given the same hint word
+      this.candidates.removeIf(candidate -> !String.valueOf(this.hints.compute(candidate, guessedWord)).equals(hintWord));
+
+      if (this.candidates.isEmpty()) this.inconsistencies++; // the hints of the game came from different secret words
+    }
+
+    public int inconsistencies() {
+      return this.inconsistencies;
+    }
+  }
+
+  // Growable array of latencies
+  private static class Samples {
+    private long[] values = new long[1024];
+    private int size = 0;
+
+    public void add(long value) {
+      if (this.size == this.values.length) this.values = Arrays.copyOf(this.values, this.size * 2);
+      this.values[this.size++] = value;
+    }
+
+    public void addAll(Samples samples) {
+      for (int i=0; i<samples.size; i++) add(samples.values[i]);
+    }
+
+    public long[] sorted() {
+      long[] sorted = Arrays.copyOf(this.values, this.size);
+      Arrays.sort(sorted);
+      return sorted;
+    }
+  }
+}
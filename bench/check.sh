@@ -0,0 +1,14 @@
+#!/bin/sh
+# Compile the server and the checks, then run the checks in a scratch directory.
+# Usage: [JAVA_OPTS=...] bench/check.sh [check name regex]
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -cp "$ROOT/libs/gson-2.10.jar" -d "$WORK/classes" "$ROOT"/src/*.java "$ROOT"/bench/*.java
+cp "$ROOT/bin/words.txt" "$WORK/"
+
+cd "$WORK"
+java $JAVA_OPTS -cp "$WORK/classes:$ROOT/libs/gson-2.10.jar" WordleChecks "$@"
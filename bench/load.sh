@@ -0,0 +1,14 @@
+#!/bin/sh
+# Compile the client and the load generator, then run the load generator from the bin folder
+# (it reads ClientConfig.txt and words.txt there).
+# Usage: bench/load.sh [players=N] [duration=SECONDS] [strategy=random|solver] [invalid=FRACTION] [think=MS] [prefix=NAME] [seed=N]
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -cp "$ROOT/libs/gson-2.10.jar" -d "$WORK/classes" "$ROOT"/src/*.java "$ROOT"/bench/*.java
+
+cd "$ROOT/bin"
+java -cp "$WORK/classes:$ROOT/libs/gson-2.10.jar" WordleLoadGenerator "$@"
@@ -0,0 +1,14 @@
+#!/bin/sh
+# Compile the server and the benchmarks, then run the benchmarks in a scratch directory.
+# Usage: [JAVA_OPTS=...] bench/run.sh [benchmark name regex]
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -cp "$ROOT/libs/gson-2.10.jar" -d "$WORK/classes" "$ROOT"/src/*.java "$ROOT"/bench/*.java
+cp "$ROOT/bin/words.txt" "$WORK/"
+
+cd "$WORK"
+java -Xms3g -Xmx3g $JAVA_OPTS -cp "$WORK/classes:$ROOT/libs/gson-2.10.jar" WordleBenchmark "$@"
@@ -0,0 +1,285 @@
+// I/O imports
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Connection imports
+import java.net.ProtocolException;
+import java.net.Socket;
+
+// Utility imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/*
+ * Client side of the BinaryProtocol. Every request is a single frame with a new id, and the "Async" methods
+ * return at once with a future completed when the response with the same id arrives, so many requests can
+ * be in flight on the connection (pipelining): a reader thread reads the responses and completes the futures.
+ * The other methods send a request and wait for its response, like the WordleClientMain functions.
+ * The magic byte is sent when the connection is created and its confirmation is read before the first
+ * response, so choosing the protocol costs no round trip.
+ */
+public class BinaryClient {
+  private final DataInputStream sockIn;
+  private final DataOutputStream sockOut;
+  private final Map<Integer, Pending> pending = new ConcurrentHashMap<>(); // requests waiting for the response, indexed by id
+  private int nextId = 0; // id of the next request, guarded by sockOut
+  private volatile IOException failure = null; // why the connection can't be used anymore
+  private String hintWord = null; // hint word of the last valid guess
+
+  public BinaryClient(Socket client) throws IOException {
+    this.sockIn = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+    this.sockOut = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+
+    this.sockOut.write(BinaryProtocol.MAGIC); // ask for the binary protocol, sent with the first request
+
+    Thread reader = new Thread(this::readResponses, "binary-client-reader");
+    reader.setDaemon(true); // it ends with the connection
+    reader.start();
+  }
+
+  // The result of a guess: the status of the text protocol and, if it's 1, the hint word
+  public static class Guess {
+    private final int status;
+    private final String hintWord;
+
+    public Guess(int status, String hintWord) {
+      this.status = status;
+      this.hintWord = hintWord;
+    }
+
+    public int getStatus() {
+      return this.status;
+    }
+
+    public String getHintWord() {
+      return this.hintWord;
+    }
+  }
+
+  // Registration request
+  public int register(String username, String password) throws IOException {
+    return await(registerAsync(username, password));
+  }
+
+  public CompletableFuture<Integer> registerAsync(String username, String password) throws IOException {
+    return status(BinaryProtocol.REGISTER, id -> BinaryProtocol.request(BinaryProtocol.REGISTER, id, username, password));
+  }
+
+  // Login request
+  public int login(String username, String password) throws IOException {
+    return await(loginAsync(username, password));
+  }
+
+  public CompletableFuture<Integer> loginAsync(String username, String password) throws IOException {
+    return status(BinaryProtocol.LOGIN, id -> BinaryProtocol.request(BinaryProtocol.LOGIN, id, username, password));
+  }
+
+  // Logout request
+  public int logout(String username, String password) throws IOException {
+    return await(logoutAsync(username, password));
+  }
+
+  public CompletableFuture<Integer> logoutAsync(String username, String password) throws IOException {
+    return status(BinaryProtocol.LOGOUT, id -> BinaryProtocol.request(BinaryProtocol.LOGOUT, id, username, password));
+  }
+
+  // Play request
+  public int playWordle(String username, String password) throws IOException {
+    return await(playWordleAsync(username, password));
+  }
+
+  public CompletableFuture<Integer> playWordleAsync(String username, String password) throws IOException {
+    return status(BinaryProtocol.PLAY, id -> BinaryProtocol.request(BinaryProtocol.PLAY, id, username, password));
+  }
+
+  // Start the game, 1 only if the previous play request was accepted, so it can be sent together with the play request
+  public int startGame() throws IOException {
+    return await(startGameAsync());
+  }
+
+  public CompletableFuture<Integer> startGameAsync() throws IOException {
+    return status(BinaryProtocol.START, id -> BinaryProtocol.request(BinaryProtocol.START, id));
+  }
+
+  // Send word request: 1 if the word is valid (the hint word is returned by getHintWord()), -1 if it's not in the word list, 0 if the secret word has changed
+  public int sendWord(String guessedWord) throws IOException {
+    Guess guess = await(sendWordAsync(guessedWord));
+    this.hintWord = guess.getHintWord();
+
+    return guess.getStatus();
+  }
+
+  public CompletableFuture<Guess> sendWordAsync(String guessedWord) throws IOException {
+    return send(BinaryProtocol.GUESS, id -> BinaryProtocol.guess(id, guessedWord)).thenApply(response -> {
+      int status = response.get();
+      return new Guess(status, status == 1 ? BinaryProtocol.decodeHint(response.getShort() & 0xFFFF) : null);
+    });
+  }
+
+  // Returns the hint word of the last valid guess sent with sendWord()
+  public String getHintWord() {
+    return this.hintWord;
+  }
+
+  // Get statistics request, an empty list if the user isn't logged in
+  public List<Integer> sendMeStatistics(String username, String password) throws IOException {
+    return await(sendMeStatisticsAsync(username, password));
+  }
+
+  public CompletableFuture<List<Integer>> sendMeStatisticsAsync(String username, String password) throws IOException {
+    return send(BinaryProtocol.STATISTICS, id -> BinaryProtocol.request(BinaryProtocol.STATISTICS, id, username, password)).thenApply(response -> {
+      List<Integer> statistics = new ArrayList<>();
+      if (response.get() != 1) return statistics;
+
+      while (response.hasRemaining()) statistics.add(response.getInt()); // statistics followed by the guess distribution
+
+      return statistics;
+    });
+  }
+
+  // Word statistics request, "number" 0 for the current secret word: an empty list if the word is unknown
+  public List<Integer> wordStatistics(int number) throws IOException {
+    return await(wordStatisticsAsync(number));
+  }
+
+  public CompletableFuture<List<Integer>> wordStatisticsAsync(int number) throws IOException {
+    return send(BinaryProtocol.WORD_STATISTICS, id -> BinaryProtocol.wordStatistics(id, number)).thenApply(response -> {
+      List<Integer> statistics = new ArrayList<>();
+      if (response.get() != 1) return statistics;
+
+      while (response.hasRemaining()) statistics.add(response.getInt()); // number of the word and its statistics, followed by the guess distribution
+
+      return statistics;
+    });
+  }
+
+  // Leaderboard request, an empty list if the user isn't logged in
+  public List<Leaderboard.Ranking> leaderboard(String username, String password) throws IOException {
+    return await(leaderboardAsync(username, password));
+  }
+
+  public CompletableFuture<List<Leaderboard.Ranking>> leaderboardAsync(String username, String password) throws IOException {
+    return send(BinaryProtocol.LEADERBOARD, id -> BinaryProtocol.request(BinaryProtocol.LEADERBOARD, id, username, password)).thenApply(response -> {
+      List<Leaderboard.Ranking> rankings = new ArrayList<>();
+      if (response.get() != 1) return rankings;
+
+      // For every index the position of the user, then the best users
+      while (response.hasRemaining()) {
+        int rank = response.getInt();
+        int value = response.getInt();
+        List<Leaderboard.Entry> top = new ArrayList<>();
+
+        for (int entries = response.get() & 0xFF; entries > 0; entries--) {
+          int entryRank = response.getInt();
+          int entryValue = response.getInt();
+          byte[] entryUsername = new byte[response.getShort() & 0xFFFF];
+          response.get(entryUsername);
+
+          top.add(new Leaderboard.Entry(entryRank, new String(entryUsername, StandardCharsets.UTF_8), entryValue));
+        }
+
+        rankings.add(new Leaderboard.Ranking(top, new Leaderboard.Entry(rank, username, value)));
+      }
+
+      return rankings;
+    });
+  }
+
+  // Share request
+  public int share() throws IOException {
+    return await(shareAsync());
+  }
+
+  public CompletableFuture<Integer> shareAsync() throws IOException {
+    return status(BinaryProtocol.SHARE, id -> BinaryProtocol.request(BinaryProtocol.SHARE, id));
+  }
+
+  // Wait for a response, throwing the error of the connection if it failed
+  public static <T> T await(CompletableFuture<T> future) throws IOException {
+    try {return future.get();}
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+      throw new IOException(e.getCause());
+    }
+  }
+
+  // Creates the frame of a request with its id
+  private interface Request {
+    byte[] frame(int id);
+  }
+
+  // A request waiting for its response
+  private static class Pending {
+    private final byte type;
+    private final CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+
+    public Pending(byte type) {
+      this.type = type;
+    }
+  }
+
+  // Send a request whose response is only the status
+  private CompletableFuture<Integer> status(byte type, Request request) throws IOException {
+    return send(type, request).thenApply(response -> (int) response.get());
+  }
+
+  // Send a request, the future is completed with its response positioned after type and id
+  private CompletableFuture<ByteBuffer> send(byte type, Request request) throws IOException {
+    synchronized (this.sockOut) {
+      if (this.failure != null) throw this.failure;
+
+      int id = this.nextId++;
+      byte[] frame = request.frame(id); // before waiting for the response: a request that can't be framed is never sent
+      Pending pending = new Pending(type);
+      this.pending.put(id, pending);
+
+      this.sockOut.write(frame);
+      this.sockOut.flush();
+
+      return pending.response;
+    }
+  }
+
+  // Read the responses and complete the futures of their requests, until the connection fails or is closed
+  private void readResponses() {
+    try {
+      if (this.sockIn.readUnsignedByte() != BinaryProtocol.MAGIC) throw new ProtocolException("the server doesn't speak the binary protocol");
+
+      while (true) {
+        byte[] frame = new byte[this.sockIn.readUnsignedShort()];
+        this.sockIn.readFully(frame);
+
+        ByteBuffer response = ByteBuffer.wrap(frame);
+        byte type = response.get();
+        Pending pending = this.pending.remove(response.getInt());
+
+        if (pending == null || pending.type != type) throw new ProtocolException("unexpected response type " + type);
+
+        pending.response.complete(response);
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      this.failure = e instanceof IOException ? (IOException) e : new IOException(e);
+
+      // Fail the requests still waiting, and the ones sent while failing
+      synchronized (this.sockOut) {
+        for (Pending pending: this.pending.values()) pending.response.completeExceptionally(this.failure);
+        this.pending.clear();
+      }
+    }
+  }
+}
@@ -0,0 +1,166 @@
+// I/O imports
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Connection imports
+import java.net.ProtocolException;
+
+// Utility imports
+import java.util.List;
+
+/*
+ * Binary framing of the protocol, an alternative to the text lines chosen by the client: it sends MAGIC as the
+ * first byte of the connection (a text request always starts with a digit) and the server answers MAGIC.
+ * Every frame is [length u16][type u8][id i32][payload], the length counts type, id and payload. The id is chosen
+ * by the client and repeated in the response, so a client can send many requests without waiting for the
+ * responses (pipelining) and match every response to its request, in whatever order the responses arrive.
+ * Requests: REGISTER, LOGIN, LOGOUT, PLAY, STATISTICS and LEADERBOARD carry username and password (u16 length +
+ * UTF-8 bytes), START and SHARE carry nothing, GUESS carries the guessed word packed in a long (WordDictionary.encode),
+ * WORD_STATISTICS carries the number of a secret word as an int (0 for the current one).
+ * Responses have the type of their request and a status byte, with the same values of the text responses;
+ * a successful STATISTICS is followed by 16 ints (statistics and guess distribution), a valid GUESS by the hint
+ * word as a base-3 code in an unsigned short ('-' is 0, '?' is 1, '!' is 2, the first letter is the most significant digit),
+ * a successful LEADERBOARD by every index of the Leaderboard: rank and value ints of the user, a u8 count of
+ * entries, then rank int, value int and username of every entry; a successful WORD_STATISTICS by 16 ints (number of
+ * the word, started, solved and failed games, guess distribution).
+ */
+public class BinaryProtocol {
+  public static final int MAGIC = 0xB1; // first byte of a binary connection, never the first byte of a text request
+  public static final int MAX_FRAME = 1024; // longest request frame accepted by the server, length prefix excluded
+  private static final int MAX_LENGTH = 0xFFFF; // longest frame the u16 length prefix can tell, the responses are read up to it
+
+  // Frame types
+  public static final byte REGISTER = 1;
+  public static final byte LOGIN = 2;
+  public static final byte LOGOUT = 3;
+  public static final byte PLAY = 4;
+  public static final byte START = 5;
+  public static final byte STATISTICS = 6;
+  public static final byte SHARE = 7;
+  public static final byte GUESS = 8;
+  public static final byte LEADERBOARD = 9;
+  public static final byte WORD_STATISTICS = 10;
+
+  // Request frame with username and password
+  public static byte[] request(byte type, int id, String username, String password) {
+    byte[] user = username.getBytes(StandardCharsets.UTF_8);
+    byte[] pass = password.getBytes(StandardCharsets.UTF_8);
+
+    int payload = 2 + user.length + 2 + pass.length;
+    if (1 + 4 + payload > MAX_FRAME) throw new IllegalArgumentException("request of " + (1 + 4 + payload) + " bytes, the server reads at most " + MAX_FRAME); // the server would close the connection
+
+    ByteBuffer frame = frame(type, id, payload);
+    frame.putShort((short) user.length).put(user);
+    frame.putShort((short) pass.length).put(pass);
+
+    return frame.array();
+  }
+
+  // Request frame without payload
+  public static byte[] request(byte type, int id) {
+    return frame(type, id, 0).array();
+  }
+
+  // Word statistics request frame, "number" 0 for the current secret word
+  public static byte[] wordStatistics(int id, int number) {
+    return frame(WORD_STATISTICS, id, 4).putInt(number).array();
+  }
+
+  // Guess request frame, a word that isn't 10 lowercase letters is sent as 0 (never a word of the dictionary)
+  public static byte[] guess(int id, String guessedWord) {
+    return frame(GUESS, id, 8).putLong(WordDictionary.encode(guessedWord)).array();
+  }
+
+  // Response frame with only the status
+  public static byte[] response(byte type, int id, int status) {
+    return frame(type, id, 1).put((byte) status).array();
+  }
+
+  // Response frame of a valid guess
+  public static byte[] hint(int id, char[] hintWord) {
+    return frame(GUESS, id, 1 + 2).put((byte) 1).putShort((short) encodeHint(hintWord)).array();
+  }
+
+  // Response frame of the statistics, "-1" if the list is empty (user not logged in)
+  public static byte[] statistics(int id, List<Integer> statistics) {
+    return ints(STATISTICS, id, statistics);
+  }
+
+  // Response frame of the statistics of a secret word, "-1" if the list is empty (unknown word)
+  public static byte[] wordStatistics(int id, List<Integer> statistics) {
+    return ints(WORD_STATISTICS, id, statistics);
+  }
+
+  // Response frame of the leaderboard, "-1" if the list is empty (user not logged in)
+  public static byte[] leaderboard(int id, List<Leaderboard.Ranking> rankings) {
+    if (rankings.isEmpty()) return response(LEADERBOARD, id, -1);
+
+    int payload = 1;
+    for (Leaderboard.Ranking ranking: rankings) {
+      payload += 4 + 4 + 1;
+      for (Leaderboard.Entry entry: ranking.getTop()) payload += 4 + 4 + 2 + entry.getUsername().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    ByteBuffer frame = frame(LEADERBOARD, id, payload).put((byte) 1);
+
+    for (Leaderboard.Ranking ranking: rankings) {
+      frame.putInt(ranking.getUser().getRank()).putInt(ranking.getUser().getValue()).put((byte) ranking.getTop().size());
+
+      for (Leaderboard.Entry entry: ranking.getTop()) {
+        byte[] username = entry.getUsername().getBytes(StandardCharsets.UTF_8);
+        frame.putInt(entry.getRank()).putInt(entry.getValue()).putShort((short) username.length).put(username);
+      }
+    }
+
+    return frame.array();
+  }
+
+  // Read a string written by request()
+  public static String getString(ByteBuffer frame) throws ProtocolException {
+    try {
+      byte[] bytes = new byte[frame.getShort() & 0xFFFF];
+      frame.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+    catch (BufferUnderflowException e) {throw new ProtocolException("truncated frame");}
+  }
+
+  // Encode a hint word in base 3
+  public static int encodeHint(char[] hintWord) {
+    int code = 0;
+    for (char c: hintWord) code = code * 3 + (c == '!' ? 2 : c == '?' ? 1 : 0);
+    return code;
+  }
+
+  // Decode a hint word from its base-3 code
+  public static String decodeHint(int code) {
+    char[] hintWord = new char[WordDictionary.WORD_LENGTH];
+    for (int i=hintWord.length - 1; i>=0; i--) {
+      int digit = code % 3;
+      hintWord[i] = digit == 2 ? '!' : digit == 1 ? '?' : '-';
+      code /= 3;
+    }
+
+    return new String(hintWord);
+  }
+
+  // Response frame of a list of ints, "-1" if the list is empty
+  private static byte[] ints(byte type, int id, List<Integer> ints) {
+    if (ints.isEmpty()) return response(type, id, -1);
+
+    ByteBuffer frame = frame(type, id, 1 + 4 * ints.size()).put((byte) 1);
+    for (int value: ints) frame.putInt(value);
+
+    return frame.array();
+  }
+
+  // Allocate a frame with its length prefix, type and id, the payload must fill the rest
+  private static ByteBuffer frame(byte type, int id, int payload) {
+    if (1 + 4 + payload > MAX_LENGTH) throw new IllegalArgumentException("frame of " + (1 + 4 + payload) + " bytes, the length prefix tells at most " + MAX_LENGTH); // never send a truncated length
+
+    ByteBuffer frame = ByteBuffer.allocate(2 + 1 + 4 + payload);
+    frame.putShort((short) (1 + 4 + payload)).put(type).putInt(id);
+    return frame;
+  }
+}
@@ -0,0 +1,75 @@
+// I/O imports
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * State of the secret word rotation that must survive a restart: the number of the current secret word, when
+ * it was chosen, and where it is in the dictionary (the history pointer, its index in words.txt). It's written
+ * at every rotation to a temporary file moved in place, so the file always holds a whole rotation, and read at
+ * startup with a single small read instead of scanning the shared messages of every user:
+ *   [magic int][version int][number int][word index int][rotation time long, ms since the epoch]
+ * All little-endian, like the dictionary file.
+ */
+public class GameMetadata {
+  private static final int MAGIC = 0x57474D44; // "WGMD"
+  private static final int VERSION = 1;
+  private static final int SIZE = 24; // bytes of the file
+
+  private final int number; // secret word number
+  private final int wordIndex; // index of the secret word in the dictionary
+  private final long rotatedAt; // when the secret word was chosen, ms since the epoch
+
+  public GameMetadata(int number, int wordIndex, long rotatedAt) {
+    this.number = number;
+    this.wordIndex = wordIndex;
+    this.rotatedAt = rotatedAt;
+  }
+
+  public int getNumber() {
+    return this.number;
+  }
+
+  public int getWordIndex() {
+    return this.wordIndex;
+  }
+
+  public long getRotatedAt() {
+    return this.rotatedAt;
+  }
+
+  // Read the metadata file, null if there is none yet
+  public static GameMetadata read(Path path) throws IOException {
+    ByteBuffer file = ByteBuffer.allocate(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      while (file.hasRemaining() && channel.read(file) != -1); // a read can return fewer bytes
+    }
+    catch (NoSuchFileException e) {return null;}
+
+    if (file.hasRemaining() || file.getInt(0) != MAGIC || file.getInt(4) != VERSION) throw new IOException("not a game metadata file");
+
+    return new GameMetadata(file.getInt(8), file.getInt(12), file.getLong(16));
+  }
+
+  // Write the metadata file, replacing the previous one only when the new one is on disk
+  public void write(Path path) throws IOException {
+    ByteBuffer file = ByteBuffer.allocate(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    file.putInt(MAGIC).putInt(VERSION).putInt(this.number).putInt(this.wordIndex).putLong(this.rotatedAt).flip();
+
+    Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      while (file.hasRemaining()) channel.write(file);
+      channel.force(true);
+    }
+
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -0,0 +1,42 @@
+// Utility imports
+import java.util.Arrays;
+
+/*
+ * Computes the hint word of a guessed word: "!" for a letter in the correct place, "?" for a letter of the
+ * secret word in the wrong place, "-" otherwise. A letter is marked "?" only while the times it was met
+ * (the "!" of that letter included) are not more than its occurrences in the secret word.
+ * Every session owns an engine: it works on primitive per-letter counts kept in reusable arrays, the
+ * occurrences and positions of the secret word letters come from the SecretWordEpoch, and no lock is needed.
+ */
+public class HintEngine {
+  private final int[] seen = new int[26]; // occurrences of each letter met in the guessed word
+  private final char[] hint = new char[WordDictionary.WORD_LENGTH]; // hint word, reused by every call
+
+  // Returns the hint word of "guessedWord" (a word of the dictionary) against the secret word of "epoch", valid until the next call
+  public char[] compute(SecretWordEpoch epoch, String guessedWord) {
+    Arrays.fill(this.seen, 0);
+
+    // Count the matching characters first
+    for (int i=0; i<this.hint.length; i++) {
+      int letter = guessedWord.charAt(i) - 'a';
+      if ((epoch.positions(letter) & (1 << i)) != 0) this.seen[letter]++;
+    }
+
+    // Create the hint word
+    for (int i=0; i<this.hint.length; i++) {
+      int letter = guessedWord.charAt(i) - 'a';
+
+      if ((epoch.positions(letter) & (1 << i)) != 0) {
+        this.hint[i] = '!'; // the character is in the correct place
+        continue;
+      }
+
+      this.seen[letter]++;
+
+      // If I have encountered this character fewer times than there are occurrences in the secret word
+      this.hint[i] = this.seen[letter] <= epoch.occurrences(letter) ? '?' : '-';
+    }
+
+    return this.hint;
+  }
+}
@@ -0,0 +1,284 @@
+// Utility imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Global rankings of the registered users, kept up to date one user at a time: every finished game moves the
+ * user in each index (the score before the change is read first, then the entries with the old score are
+ * replaced), so a query never scans the users. The indexes are:
+ *   WIN_RATE       wins / games in hundredths of a percent, for the users with at least "minGames" games
+ *   MAX_STREAK     longest streak of games won, for the users with at least one game
+ *   AVERAGE_TRIES  tries of the games won on average, in hundredths (fewer is better), for the users with at
+ *                  least "minGames" games and one win
+ * Every index is a ConcurrentSkipListMap, used as a set, of (score, username) entries, best first, so the top K are the first
+ * K entries; and a Fenwick tree of LongAdders counting the users by score, so the rank of a user (1 + the users
+ * with a better score, equal scores share the rank) is a prefix sum, O(log n) whatever the number of users.
+ * Scores above the last bucket of the tree (streaks of thousands of games) are counted walking the head of the set.
+ * Neither structure takes a lock: the updates of a user are serialized by the user's lock (UserStore.lockFor),
+ * the ones of different users run in parallel. A query running with an update can miss the updated user.
+ */
+public class Leaderboard {
+  public static final int WIN_RATE = 0;
+  public static final int MAX_STREAK = 1;
+  public static final int AVERAGE_TRIES = 2;
+  public static final String[] INDEXES = {"win rate", "max streak", "average tries"}; // index names, by index
+
+  public static final int TOP = 10; // users of a leaderboard request, in every index
+  private static final int NOT_RANKED = -1; // score of a user not in an index
+
+  private static final int MAX_RATE = 10000; // 100.00%
+  private static final int MAX_AVERAGE = User.MAX_TRIES * 100; // 12.00 tries
+  private static final int STREAK_BUCKETS = 4096; // streaks counted by the tree, the longer ones share the last bucket
+
+  private static final int[] BUCKETS = {MAX_RATE + 1, STREAK_BUCKETS, MAX_AVERAGE - 100 + 1}; // buckets of the trees, by index
+
+  private final int minGames; // games needed to be ranked by win rate and average tries
+  private final Index[] indexes = new Index[BUCKETS.length];
+
+  // Create an empty leaderboard
+  public Leaderboard(int minGames) {
+    this(minGames, new ArrayList<>());
+  }
+
+  // Create the leaderboard of the users read at startup: the entries of every index are sorted first and put in the sets in order, and the trees are counted in linear time, instead of moving the users one at a time
+  public Leaderboard(int minGames, Collection<User> users) {
+    this.minGames = Math.max(1, minGames); // a user without games has no win rate
+
+    for (int index=0; index<this.indexes.length; index++) {
+      Key[] keys = new Key[users.size()];
+      int count = 0;
+
+      for (User user: users) {
+        int score = score(index, user);
+        if (score != NOT_RANKED) keys[count++] = new Key(score, user.getUsername());
+      }
+
+      Arrays.sort(keys, 0, count);
+      this.indexes[index] = new Index(BUCKETS[index], keys, count);
+    }
+  }
+
+  // The position of a user in an index: rank 0 if the user isn't ranked
+  public static class Entry {
+    private final int rank;
+    private final String username;
+    private final int value;
+
+    public Entry(int rank, String username, int value) {
+      this.rank = rank;
+      this.username = username;
+      this.value = value;
+    }
+
+    // Returns the rank, 1 for the best users
+    public int getRank() {
+      return this.rank;
+    }
+
+    // Returns the username
+    public String getUsername() {
+      return this.username;
+    }
+
+    // Returns the value of the index, e.g. the win rate in hundredths of a percent
+    public int getValue() {
+      return this.value;
+    }
+  }
+
+  // One index as seen by a user: the best users and the position of the user
+  public static class Ranking {
+    private final List<Entry> top;
+    private final Entry user;
+
+    public Ranking(List<Entry> top, Entry user) {
+      this.top = top;
+      this.user = user;
+    }
+
+    // Returns the best users, best first
+    public List<Entry> getTop() {
+      return this.top;
+    }
+
+    // Returns the position of the user, rank 0 if not ranked
+    public Entry getUser() {
+      return this.user;
+    }
+  }
+
+  // Returns the scores of a user in every index, to be passed to update() after changing the statistics; call it holding the user's lock
+  public int[] scores(User user) {
+    int[] scores = new int[this.indexes.length];
+    for (int index=0; index<scores.length; index++) scores[index] = score(index, user);
+
+    return scores;
+  }
+
+  // Move a user whose statistics changed, "before" are the scores read before the change (null for a new user); call it holding the user's lock
+  public void update(User user, int[] before) {
+    for (int index=0; index<this.indexes.length; index++) {
+      int score = score(index, user);
+      int old = before != null ? before[index] : NOT_RANKED;
+
+      if (score == old) continue;
+
+      if (old != NOT_RANKED) this.indexes[index].remove(user.getUsername(), old);
+      if (score != NOT_RANKED) this.indexes[index].add(user.getUsername(), score);
+    }
+  }
+
+  // Returns the best "k" users of an index and the position of "user"; call it holding the user's lock
+  public Ranking ranking(int index, User user, int k) {
+    Index ranked = this.indexes[index];
+    int score = score(index, user);
+
+    List<Entry> top = new ArrayList<>(k);
+    int position = 0;
+    int rank = 0;
+    int previous = NOT_RANKED;
+
+    for (Iterator<Key> keys = ranked.keys.keySet().iterator(); keys.hasNext() && top.size() < k; ) {
+      Key key = keys.next();
+      position++;
+
+      if (key.score != previous) rank = position; // equal scores share the rank
+      previous = key.score;
+
+      top.add(new Entry(rank, key.username, value(index, key.score)));
+    }
+
+    Entry entry = score == NOT_RANKED ? new Entry(0, user.getUsername(), 0) : new Entry(ranked.rank(score), user.getUsername(), value(index, score));
+
+    return new Ranking(top, entry);
+  }
+
+  // Returns the number of users ranked in an index
+  public long size(int index) {
+    return this.indexes[index].size();
+  }
+
+  // Returns a value of an index as it's shown to the users
+  public static String format(int index, int value) {
+    if (index == WIN_RATE) return String.format(Locale.ROOT, "%d.%02d%%", value / 100, value % 100);
+    if (index == AVERAGE_TRIES) return String.format(Locale.ROOT, "%d.%02d", value / 100, value % 100);
+
+    return String.valueOf(value);
+  }
+
+  // Returns the score of a user in an index, higher is better, NOT_RANKED if the user isn't in the index
+  private int score(int index, User user) {
+    int games = user.getGames();
+    int wins = user.getWins();
+
+    if (index == WIN_RATE) return games < this.minGames ? NOT_RANKED : (int) (wins * (long) MAX_RATE / games);
+
+    if (index == MAX_STREAK) return games == 0 ? NOT_RANKED : user.getMaxStreak();
+
+    if (games < this.minGames || wins == 0) return NOT_RANKED;
+
+    long tries = 0; // tries of all the games won
+    for (int t=1; t<=User.MAX_TRIES; t++) tries += (long) t * user.getGuessCount(t);
+
+    return Math.max(0, MAX_AVERAGE - (int) ((tries * 100 + wins / 2) / wins)); // rounded to hundredths, and fewer tries is a higher score (never below 0, even if a file has more games in the distribution than wins)
+  }
+
+  // Returns the value of a score as it's sent to the clients
+  private static int value(int index, int score) {
+    return index == AVERAGE_TRIES ? MAX_AVERAGE - score : score;
+  }
+
+  // An entry of an index, ordered by score (higher first) and then by username
+  private static class Key implements Comparable<Key> {
+    private final int score;
+    private final String username;
+
+    public Key(int score, String username) {
+      this.score = score;
+      this.username = username;
+    }
+
+    @Override
+    public int compareTo(Key other) {
+      if (this.score != other.score) return this.score > other.score ? -1 : 1;
+      return this.username.compareTo(other.username);
+    }
+  }
+
+  // The users ranked by one score: the ordered entries and the count of users by score
+  private static class Index {
+    private final ConcurrentSkipListMap<Key, Boolean> keys; // used as a set, the values are all TRUE
+    private final LongAdder[] tree; // Fenwick tree over the buckets, node i (1-based) counts the buckets (i - (i & -i), i]
+
+    // Create an index with the first "count" keys, sorted: every key is put after the last one, so no insertion moves the others
+    public Index(int buckets, Key[] sorted, int count) {
+      this.keys = new ConcurrentSkipListMap<>();
+      for (int i=0; i<count; i++) this.keys.put(sorted[i], Boolean.TRUE);
+
+      // Count the users of every bucket, then add every node of the tree to its parent
+      long[] counts = new long[buckets + 1];
+      for (int i=0; i<count; i++) counts[bucket(sorted[i].score, buckets) + 1]++;
+      for (int i=1; i<counts.length; i++) if (i + (i & -i) < counts.length) counts[i + (i & -i)] += counts[i];
+
+      this.tree = new LongAdder[buckets + 1];
+      for (int i=1; i<this.tree.length; i++) {
+        this.tree[i] = new LongAdder();
+        this.tree[i].add(counts[i]);
+      }
+    }
+
+    public void add(String username, int score) {
+      this.keys.put(new Key(score, username), Boolean.TRUE);
+      count(score, 1);
+    }
+
+    public void remove(String username, int score) {
+      count(score, -1);
+      this.keys.remove(new Key(score, username));
+    }
+
+    // Returns 1 + the number of users with a better score
+    public int rank(int score) {
+      int bucket = bucket(score);
+      long better = prefix(this.tree.length - 2) - prefix(bucket); // users in the buckets above
+
+      // The last bucket holds different scores, the better ones are the first entries of the set
+      if (bucket == this.tree.length - 2) {
+        better += this.keys.headMap(new Key(score, ""), false).size();
+      }
+
+      return (int) better + 1;
+    }
+
+    public long size() {
+      return prefix(this.tree.length - 2);
+    }
+
+    // Add "delta" users to the bucket of "score"
+    private void count(int score, int delta) {
+      for (int i=bucket(score) + 1; i<this.tree.length; i += i & -i) this.tree[i].add(delta);
+    }
+
+    // Returns the users in the buckets 0..bucket
+    private long prefix(int bucket) {
+      long sum = 0;
+      for (int i=bucket + 1; i>0; i -= i & -i) sum += this.tree[i].sum();
+
+      return sum;
+    }
+
+    private int bucket(int score) {
+      return bucket(score, this.tree.length - 1);
+    }
+
+    private static int bucket(int score, int buckets) {
+      return Math.min(score, buckets - 1);
+    }
+  }
+}
@@ -9,34 +9,62 @@ import java.net.MulticastSocket;
 import java.util.ArrayList;
 import java.util.List;
 
+/*
+ * Receives the notifications of the multicast group and keeps only the last "capacity" ones, in a ring buffer
+ * overwritten from the oldest, so a client left running on a busy group never grows. A single receive buffer
+ * is reused for every datagram. The ring is guarded by its monitor: the receiving thread adds to it and
+ * the Client copies it, then prints the copy without holding the lock.
+ */
 public class MulticastHandler implements Runnable {
-  private List<String> notifications;
+  private final String[] notifications; // ring buffer of the last notifications
+  private long received = 0; // notifications received, the next one goes in position received % capacity; guarded by notifications
   private MulticastSocket client;
 
-  public MulticastHandler(MulticastSocket client) {
-    this.notifications = new ArrayList<String>();
+  public MulticastHandler(MulticastSocket client, int capacity) {
+    this.notifications = new String[capacity];
     this.client = client;
   }
 
   // Wait for notifications from the server
   public void run() {
+    byte[] buffer = new byte[SharePublisher.MAX_RECEIVE]; // large enough for any batch, reused by every datagram
+    DatagramPacket notificationBytes = new DatagramPacket(buffer, buffer.length); // create a request datagram packet
+
     while (true) {
-      DatagramPacket notificationBytes = new DatagramPacket(new byte[1024], 1024); // create a new request datagram packet
+      notificationBytes.setLength(buffer.length); // a receive shrinks the length to the datagram received
 
       try {this.client.receive(notificationBytes);} // receive the notification from the multicast group and store into the buffer
       catch (IOException e) {break;}
 
-      String notification = new String(notificationBytes.getData()); // get the notification as a string
-      notifications.add(notification); // add the notification into the list of notifications
-    } 
+      for (String notification: SharePublisher.decode(buffer, notificationBytes.getLength())) add(notification); // add the notifications of the datagram, one or a batch
+    }
+  }
+
+  // Add a notification, replacing the oldest one if the ring is full
+  private void add(String notification) {
+    synchronized (this.notifications) {
+      this.notifications[(int) (this.received++ % this.notifications.length)] = notification;
+    }
+  }
+
+  // Returns the notifications kept, from the oldest
+  public List<String> getNotifications() {
+    synchronized (this.notifications) {
+      int size = (int) Math.min(this.received, this.notifications.length);
+      List<String> notifications = new ArrayList<>(size);
+
+      for (long i=this.received - size; i<this.received; i++) notifications.add(this.notifications[(int) (i % this.notifications.length)]);
+
+      return notifications;
+    }
   }
 
   // Print all the notifications
   public void showNotifications() {
     System.out.println("");
 
-    for (String notify: this.notifications) {
+    for (String notify: getNotifications()) {
       System.out.println(notify + "\n");
     }
   }
-}
\ No newline at end of file
+}
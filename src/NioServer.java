@@ -0,0 +1,296 @@
+// I/O imports
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Connection imports
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+// Utility imports
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/*
+ * Non-blocking front-end for the text and binary protocols: the thread calling run() accepts the connections
+ * and hands each one to one of a fixed number of event loops. Each event loop owns a Selector and serves
+ * all its connections, decoding the received bytes into lines or frames (the first byte of the connection
+ * chooses the protocol) for the connection's WordleSession and queueing the responses into the
+ * connection's write buffer. A client that sends requests without reading the responses stops being read
+ * once MAX_PENDING bytes of responses are waiting, and is read again when they have been written.
+ */
+public class NioServer implements Runnable, Closeable {
+  private static final int MAX_LINE = 1024; // longest line accepted from a client, in bytes
+  private static final int MAX_PENDING = 65536; // bytes of responses waiting for a client beyond which its requests aren't read
+
+  private final ServerSocketChannel server;
+  private final EventLoop[] loops;
+  private final Supplier<WordleSession> sessions; // creates the session of each new connection
+
+  public NioServer(int port, int threads, Supplier<WordleSession> sessions) throws IOException {
+    this.server = ServerSocketChannel.open();
+    this.server.bind(new InetSocketAddress(port), 1024); // large backlog, many clients connect at once
+    this.sessions = sessions;
+
+    this.loops = new EventLoop[threads];
+    for (int i=0; i<threads; i++) {
+      this.loops[i] = new EventLoop();
+
+      Thread thread = new Thread(this.loops[i], "nio-loop-" + i);
+      thread.setDaemon(true); // the accepting thread keeps the server alive
+      thread.start();
+    }
+  }
+
+  // Accept the connections until the server is closed
+  public void run() {
+    int next = 0; // event loop of the next connection
+
+    while (true) {
+      SocketChannel channel;
+
+      try {
+        channel = this.server.accept(); // wait for a client
+        channel.configureBlocking(false);
+      }
+      catch (IOException e) {break;} // the server was closed
+
+      this.loops[next].add(new Connection(channel, this.sessions.get())); // hand the connection to the event loops in round robin
+      next = (next + 1) % this.loops.length;
+    }
+  }
+
+  // Stop accepting connections and stop the event loops
+  public void close() throws IOException {
+    this.server.close();
+    for (EventLoop loop: this.loops) loop.close();
+  }
+
+  // A thread serving many connections with a Selector
+  private static class EventLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<Connection> added = new ConcurrentLinkedQueue<>(); // connections waiting to be registered by the loop thread
+
+    public EventLoop() throws IOException {
+      this.selector = Selector.open();
+    }
+
+    // Give a new connection to this loop, called by the accepting thread
+    public void add(Connection connection) {
+      this.added.add(connection);
+      this.selector.wakeup(); // register it now, don't wait for the next event
+    }
+
+    public void run() {
+      try {
+        while (true) {
+          this.selector.select();
+
+          // Register the new connections
+          Connection connection;
+          while ((connection = this.added.poll()) != null) {
+            try {connection.channel.register(this.selector, SelectionKey.OP_READ, connection);}
+            catch (IOException e) {connection.close();}
+          }
+
+          // Serve the ready connections
+          Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+
+            Connection ready = (Connection) key.attachment();
+
+            try {
+              if (key.isValid() && key.isReadable()) ready.read(key);
+              if (key.isValid() && key.isWritable()) ready.write(key);
+            }
+            catch (IOException | RuntimeException e) { // a broken client never stops the loop
+              WordleServerMain.metrics.connectionError();
+              ready.close();
+            }
+          }
+        }
+      }
+      catch (IOException | ClosedSelectorException e) {} // the loop was closed
+    }
+
+    // Stop the loop
+    public void close() throws IOException {
+      this.selector.close();
+    }
+  }
+
+  // A client connection with its buffers and its session
+  private static class Connection {
+    private final SocketChannel channel;
+    private final WordleSession session;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(256).limit(0); // bytes read from the client and not handled yet
+    private byte[] line = new byte[64]; // bytes of the line (or frame, length prefix included) not completed yet
+    private int lineLength = 0;
+    private boolean started = false; // if the first byte was received, so the protocol is known
+    private boolean binary = false; // if the client uses the binary protocol
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(0); // bytes not written to the client yet
+    private boolean closing = false; // if the connection must be closed once the write buffer is empty
+
+    public Connection(SocketChannel channel, WordleSession session) {
+      this.channel = channel;
+      this.session = session;
+    }
+
+    // Read the available bytes and handle every completed line; only called with OP_READ, so the bytes read before were all handled
+    public void read(SelectionKey key) throws IOException {
+      this.readBuffer.clear();
+      int read = this.channel.read(this.readBuffer);
+
+      if (read == -1) { // the client closed the connection
+        close();
+        return;
+      }
+
+      this.readBuffer.flip();
+
+      // The first byte of the connection chooses the protocol
+      if (!this.started && this.readBuffer.hasRemaining()) {
+        this.started = true;
+
+        if ((this.readBuffer.get(this.readBuffer.position()) & 0xFF) == BinaryProtocol.MAGIC) {
+          this.readBuffer.get();
+          this.binary = true;
+          send(new byte[] {(byte) BinaryProtocol.MAGIC}); // confirm the binary protocol to the client
+        }
+      }
+
+      handle();
+      write(key);
+    }
+
+    // Handle the completed lines or frames of the bytes read, stopping when the client has too many responses to read
+    private void handle() throws IOException {
+      if (this.binary) readFrames();
+      else readLines();
+    }
+
+    // Returns true if the client has too many responses to read, its next requests wait in the read buffer
+    private boolean backlogged() {
+      return this.writeBuffer.remaining() >= MAX_PENDING;
+    }
+
+    // Collect the received bytes into lines and handle every completed one
+    private void readLines() throws IOException {
+      while (this.readBuffer.hasRemaining() && !this.closing && !backlogged()) {
+        byte b = this.readBuffer.get();
+
+        if (b != '\n') {
+          if (this.lineLength == MAX_LINE) throw new IOException("line too long"); // not a client of ours
+          if (this.lineLength == this.line.length) this.line = Arrays.copyOf(this.line, this.line.length * 2);
+          this.line[this.lineLength++] = b;
+          continue;
+        }
+
+        int length = this.lineLength;
+        if (length > 0 && this.line[length - 1] == '\r') length--; // accept "\r\n" line endings too
+        this.lineLength = 0;
+
+        String line = new String(this.line, 0, length, StandardCharsets.UTF_8);
+        if (!this.session.onLine(line, this::send)) this.closing = true; // the user logged out, close after the response
+      }
+    }
+
+    // Collect the received bytes into frames and handle every completed one
+    private void readFrames() throws IOException {
+      while (this.readBuffer.hasRemaining() && !this.closing && !backlogged()) {
+        int length = this.lineLength < 2 ? 2 : 2 + frameLength(); // bytes to collect: the length prefix first, then the whole frame
+        int chunk = Math.min(length - this.lineLength, this.readBuffer.remaining());
+
+        this.readBuffer.get(this.line, this.lineLength, chunk);
+        this.lineLength += chunk;
+
+        // The length prefix is complete
+        if (length == 2 && this.lineLength == 2) {
+          int frameLength = frameLength();
+          if (frameLength == 0 || frameLength > BinaryProtocol.MAX_FRAME) throw new ProtocolException("frame length " + frameLength); // not a client of ours
+
+          if (this.line.length < 2 + frameLength) this.line = Arrays.copyOf(this.line, 2 + BinaryProtocol.MAX_FRAME);
+          continue;
+        }
+
+        if (this.lineLength < length) continue; // wait for the rest of the frame
+
+        this.lineLength = 0;
+        if (!this.session.onFrame(ByteBuffer.wrap(this.line, 2, length - 2), this::send)) this.closing = true; // the user logged out, close after the response
+      }
+    }
+
+    // Returns the length of the frame being collected, read from its prefix
+    private int frameLength() {
+      return ((this.line[0] & 0xFF) << 8) | (this.line[1] & 0xFF);
+    }
+
+    // Queue a response line
+    private void send(String response) {
+      send((response + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Queue response bytes
+    private void send(byte[] bytes) {
+      // Grow the write buffer if the line doesn't fit
+      if (this.writeBuffer.capacity() - this.writeBuffer.limit() < bytes.length) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(256, (this.writeBuffer.remaining() + bytes.length) * 2));
+        grown.put(this.writeBuffer);
+        grown.flip();
+        this.writeBuffer = grown;
+      }
+
+      int position = this.writeBuffer.position();
+      this.writeBuffer.position(this.writeBuffer.limit());
+      this.writeBuffer.limit(this.writeBuffer.limit() + bytes.length);
+      this.writeBuffer.put(bytes);
+      this.writeBuffer.position(position);
+    }
+
+    // Write as much as possible, wait for OP_WRITE if the client is slow; the requests held back by a full backlog are handled
+    // as soon as it drains, and the client is read (OP_READ) only when none are left
+    public void write(SelectionKey key) throws IOException {
+      while (true) {
+        if (this.writeBuffer.hasRemaining()) this.channel.write(this.writeBuffer);
+        if (!this.readBuffer.hasRemaining() || this.closing || backlogged()) break;
+
+        handle(); // the requests held back, now that the client read some responses
+      }
+
+      int ops = this.closing || backlogged() ? 0 : SelectionKey.OP_READ; // the requests of a backlogged client stay in its socket
+
+      if (this.writeBuffer.hasRemaining()) ops |= SelectionKey.OP_WRITE; // write the rest when the client can receive it
+      else {
+        this.writeBuffer.clear().limit(0); // everything written, reuse the buffer from the start
+
+        if (this.closing) {
+          close();
+          return;
+        }
+      }
+
+      key.interestOps(ops);
+    }
+
+    // Close the connection and log out the user if he didn't
+    public void close() {
+      try {this.session.close();}
+      catch (IOException e) {e.printStackTrace();}
+
+      try {this.channel.close();}
+      catch (IOException e) {}
+    }
+  }
+}
@@ -0,0 +1,95 @@
+// Utility imports
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/*
+ * The words a user played, as their indexes in the dictionary (WordDictionary.indexOf) instead of a list of
+ * strings. While the user played few words they are a sorted int array, 4 bytes per word and a binary search
+ * to find one; once the array would take more than a bitset up to the largest index, they become that bitset,
+ * one bit per word of the dictionary and a single read to find one. Either way the memory of a user is bounded
+ * by the size of the dictionary, not by the length of his history.
+ * Like the other fields of a User it's changed and read holding the user's lock, so it isn't synchronized.
+ * The files keep the played words as words (see User.Adapter): an index is only valid for one words.txt.
+ */
+public class PlayedWords {
+  private static final int[] EMPTY = new int[0];
+
+  private int[] sorted = EMPTY; // indexes in ascending order, while the words are few
+  private long[] bits = null; // bit i for the index i, once the words are many, then "sorted" isn't used
+  private int size = 0; // number of words
+
+  // Returns true if the word with this index was played
+  public boolean contains(int index) {
+    if (index < 0) return false;
+    if (this.bits != null) return (index >> 6) < this.bits.length && (this.bits[index >> 6] & (1L << index)) != 0;
+
+    return Arrays.binarySearch(this.sorted, 0, this.size, index) >= 0;
+  }
+
+  // Add the word with this index, returns false if it was already played
+  public boolean add(int index) {
+    if (index < 0) throw new IllegalArgumentException("not a word of the dictionary");
+    if (contains(index)) return false;
+
+    if (this.bits == null && this.size + 1 > 2 * words(Math.max(index, this.size == 0 ? 0 : this.sorted[this.size - 1]))) toBits(); // the bitset is smaller now
+
+    if (this.bits != null) {
+      if ((index >> 6) >= this.bits.length) this.bits = Arrays.copyOf(this.bits, words(index));
+      this.bits[index >> 6] |= 1L << index;
+    }
+    else {
+      int position = -Arrays.binarySearch(this.sorted, 0, this.size, index) - 1;
+      if (this.size == this.sorted.length) this.sorted = Arrays.copyOf(this.sorted, Math.max(4, this.size + (this.size >> 1)));
+
+      System.arraycopy(this.sorted, position, this.sorted, position + 1, this.size - position);
+      this.sorted[position] = index;
+    }
+
+    this.size++;
+    return true;
+  }
+
+  // Remove the word with this index, returns false if it wasn't played
+  public boolean remove(int index) {
+    if (!contains(index)) return false;
+
+    if (this.bits != null) this.bits[index >> 6] &= ~(1L << index);
+    else {
+      int position = Arrays.binarySearch(this.sorted, 0, this.size, index);
+      System.arraycopy(this.sorted, position + 1, this.sorted, position, this.size - position - 1);
+    }
+
+    this.size--;
+    return true;
+  }
+
+  // Returns the number of words played
+  public int size() {
+    return this.size;
+  }
+
+  // Pass the indexes of the words played to "action", in ascending order
+  public void forEach(IntConsumer action) {
+    if (this.bits == null) {
+      for (int i=0; i<this.size; i++) action.accept(this.sorted[i]);
+      return;
+    }
+
+    for (int word=0; word<this.bits.length; word++) {
+      for (long bits = this.bits[word]; bits != 0; bits &= bits - 1) action.accept((word << 6) + Long.numberOfTrailingZeros(bits));
+    }
+  }
+
+  // Move the indexes from the sorted array to a bitset
+  private void toBits() {
+    this.bits = new long[this.size == 0 ? 1 : words(this.sorted[this.size - 1])];
+    for (int i=0; i<this.size; i++) this.bits[this.sorted[i] >> 6] |= 1L << this.sorted[i];
+
+    this.sorted = EMPTY;
+  }
+
+  // Returns the longs of a bitset up to "index"
+  private static int words(int index) {
+    return (index >> 6) + 1;
+  }
+}
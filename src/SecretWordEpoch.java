@@ -0,0 +1,57 @@
+/*
+ * One secret word of the server, from a rotation to the next: the word, its number and the lookup tables of
+ * the hint computation (how many times every letter occurs, and in which positions), computed once per rotation
+ * instead of once per session. It's immutable, so the rotation publishes a new epoch with a single atomic write
+ * and a session that read it once works on a consistent word, number and tables, without any lock.
+ * The aggregate statistics of the games played on the word are the only mutable part, made of contention-free counters.
+ */
+public class SecretWordEpoch {
+  private final String word; // secret word
+  private final int number; // secret word number
+  private final long rotatedAt; // when it became the secret word, ms since the epoch
+  private final int[] histogram = new int[26]; // occurrences of each letter in the secret word
+  private final int[] positions = new int[26]; // positions of each letter in the secret word, bit i for position i
+  private final WordStatistics statistics = new WordStatistics(); // games of all the players on this word, new at every rotation
+
+  public SecretWordEpoch(String word, int number) {
+    this(word, number, System.currentTimeMillis());
+  }
+
+  public SecretWordEpoch(String word, int number, long rotatedAt) {
+    this.word = word;
+    this.number = number;
+    this.rotatedAt = rotatedAt;
+
+    for (int i=0; i<word.length(); i++) {
+      int letter = word.charAt(i) - 'a';
+      this.histogram[letter]++;
+      this.positions[letter] |= 1 << i;
+    }
+  }
+
+  public String getWord() {
+    return this.word;
+  }
+
+  public int getNumber() {
+    return this.number;
+  }
+
+  public long getRotatedAt() {
+    return this.rotatedAt;
+  }
+
+  public WordStatistics getStatistics() {
+    return this.statistics;
+  }
+
+  // Returns the occurrences of a letter ('a' is 0) in the secret word
+  public int occurrences(int letter) {
+    return this.histogram[letter];
+  }
+
+  // Returns the positions of a letter ('a' is 0) in the secret word, bit i for position i
+  public int positions(int letter) {
+    return this.positions[letter];
+  }
+}
@@ -0,0 +1,209 @@
+// I/O imports
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// Connection imports
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+// Utility imports
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/*
+ * Counters, latency histograms and gauges of the server. Every request type ("1".."7", "9" and "10" of the text protocol,
+ * the same numbers of the BinaryProtocol frames) and every guess has a count, an error count (requests whose
+ * handling failed with an exception) and a histogram of the time spent handling it. Recording never takes a
+ * lock: counters are LongAdders and a histogram is an array of atomic counters, one per bucket.
+ * The gauges are read only when a snapshot is taken. A snapshot is plain text, one line per metric, served to
+ * every connection of the local admin port and written periodically to a file.
+ */
+public class ServerMetrics {
+  public static final String[] REQUESTS = {null, "register", "login", "logout", "play", "start", "statistics", "share", "guess", "leaderboard", "word_statistics"}; // request names, by type
+  public static final int GUESS = BinaryProtocol.GUESS; // type of a guess, after the 7 text requests
+
+  private final LongAdder[] counts = new LongAdder[REQUESTS.length]; // requests handled, by type
+  private final LongAdder[] errors = new LongAdder[REQUESTS.length]; // requests failed, by type
+  private final Histogram[] latencies = new Histogram[REQUESTS.length]; // handling time in ns, by type
+  private final LongAdder connectionErrors = new LongAdder(); // connections closed by an I/O or protocol error
+  private final LongAdder sessions = new LongAdder(); // sessions of the connected clients
+  private final Map<String, LongSupplier> gauges = new LinkedHashMap<>(); // gauges in registration order, registered at startup
+  private final long started = System.currentTimeMillis();
+
+  public ServerMetrics() {
+    for (int type=1; type<REQUESTS.length; type++) {
+      this.counts[type] = new LongAdder();
+      this.errors[type] = new LongAdder();
+      this.latencies[type] = new Histogram();
+    }
+  }
+
+  // Record a request of "type" handled in "nanos" ns
+  public void record(int type, long nanos) {
+    this.counts[type].increment();
+    this.latencies[type].record(nanos);
+  }
+
+  // Record a request of "type" whose handling failed
+  public void error(int type) {
+    this.errors[type].increment();
+  }
+
+  // A client connected
+  public void sessionOpened() {
+    this.sessions.increment();
+  }
+
+  // A client went away
+  public void sessionClosed() {
+    this.sessions.decrement();
+  }
+
+  // Record a connection closed by an error
+  public void connectionError() {
+    this.connectionErrors.increment();
+  }
+
+  // Register a gauge, read at every snapshot
+  public synchronized void gauge(String name, LongSupplier value) {
+    this.gauges.put(name, value);
+  }
+
+  // Returns the snapshot of every metric, latencies in microseconds
+  public synchronized String snapshot() {
+    StringBuilder snapshot = new StringBuilder();
+    snapshot.append("uptime_ms ").append(System.currentTimeMillis() - this.started).append('\n');
+
+    for (int type=1; type<REQUESTS.length; type++) {
+      Histogram latency = this.latencies[type];
+
+      snapshot.append(String.format(Locale.ROOT, "request %-10s count %d errors %d mean_us %.1f p50_us %.1f p99_us %.1f p999_us %.1f max_us %.1f%n",
+        REQUESTS[type], this.counts[type].sum(), this.errors[type].sum(), latency.mean() / 1000.0,
+        latency.percentile(50) / 1000.0, latency.percentile(99) / 1000.0, latency.percentile(99.9) / 1000.0, latency.max() / 1000.0));
+    }
+
+    snapshot.append("connection_errors ").append(this.connectionErrors.sum()).append('\n');
+    snapshot.append("gauge sessions ").append(this.sessions.sum()).append('\n');
+    for (Map.Entry<String, LongSupplier> gauge: this.gauges.entrySet()) snapshot.append("gauge ").append(gauge.getKey()).append(' ').append(gauge.getValue().getAsLong()).append('\n');
+
+    return snapshot.toString();
+  }
+
+  // Serve a snapshot to every connection of "port" on the loopback interface, until the returned socket is closed
+  public ServerSocket startAdmin(int port) throws IOException {
+    ServerSocket admin = new ServerSocket(port, 16, InetAddress.getLoopbackAddress()); // local only
+
+    Thread thread = new Thread(() -> {
+      while (true) {
+        try (Socket client = admin.accept(); OutputStream out = client.getOutputStream()) {out.write(snapshot().getBytes(StandardCharsets.UTF_8));}
+        catch (IOException e) {
+          if (admin.isClosed()) break; // the server is stopping
+        }
+      }
+    }, "metrics-admin");
+    thread.setDaemon(true); // don't keep the server alive only for this thread
+    thread.start();
+
+    return admin;
+  }
+
+  // Write a snapshot to "path" every "interval" milliseconds, replacing the previous one as a whole
+  public ScheduledExecutorService startExport(Path path, long interval) {
+    ScheduledExecutorService exporter = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "metrics-exporter");
+      thread.setDaemon(true); // don't keep the server alive only for this thread
+      return thread;
+    });
+
+    exporter.scheduleAtFixedRate(() -> {
+      Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+      try {
+        Files.write(temp, snapshot().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (IOException e) {e.printStackTrace();} // the next round writes it again
+    }, interval, interval, TimeUnit.MILLISECONDS);
+
+    return exporter;
+  }
+
+  /*
+   * Log-linear histogram of positive values (HDR-style): the values below 2^SUB_BITS have a bucket each, then
+   * every power of two is split in 2^(SUB_BITS - 1) buckets of the same width, so a value is counted with a
+   * relative error below 2^-(SUB_BITS - 1) (about 3%) in a few hundred buckets. Values above MAX are counted as MAX.
+   */
+  static class Histogram {
+    private static final int SUB_BITS = 6; // 64 exact buckets, then 32 per power of two
+    private static final int HALF = 1 << (SUB_BITS - 1);
+    private static final long MAX = 1L << 40; // about 18 minutes in ns
+
+    private final AtomicLongArray buckets = new AtomicLongArray(index(MAX) + 1);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    // Count a value
+    public void record(long value) {
+      value = Math.max(0, Math.min(value, MAX));
+
+      this.buckets.incrementAndGet(index(value));
+      this.sum.add(value);
+      this.max.accumulate(value);
+    }
+
+    // Returns the value below which "percent" of the values are, as the upper end of its bucket; 0 if no value was counted
+    public long percentile(double percent) {
+      long count = 0;
+      for (int i=0; i<this.buckets.length(); i++) count += this.buckets.get(i);
+      if (count == 0) return 0;
+
+      long rank = Math.max(1, (long) Math.ceil(count * percent / 100)); // values to reach
+      long seen = 0;
+
+      for (int i=0; i<this.buckets.length(); i++) {
+        seen += this.buckets.get(i);
+        if (seen >= rank) return Math.min(lowest(i + 1) - 1, this.max.get());
+      }
+
+      return this.max.get(); // values counted while scanning
+    }
+
+    public double mean() {
+      long count = 0;
+      for (int i=0; i<this.buckets.length(); i++) count += this.buckets.get(i);
+
+      return count == 0 ? 0 : (double) this.sum.sum() / count;
+    }
+
+    public long max() {
+      return this.max.get();
+    }
+
+    // Returns the bucket of a value: the shift keeps its SUB_BITS most significant bits
+    static int index(long value) {
+      int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+      return shift * HALF + (int) (value >>> shift);
+    }
+
+    // Returns the lowest value of a bucket
+    static long lowest(int index) {
+      if (index < 2 * HALF) return index;
+
+      int shift = index / HALF - 1;
+      return (long) (index - shift * HALF) << shift;
+    }
+  }
+}
@@ -0,0 +1,230 @@
+// I/O imports
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+// Utility imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// GSON imports
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+
+/*
+ * Users persisted in N shard files instead of a single RegisteredUsers.json ("shards" mode of the UserStore):
+ * a user always lives in the shard chosen by the hash of his username, RegisteredUsers.<shard>-of-<N>.json, in
+ * the same JSON format. A change marks only its shard dirty, so a flush rewrites 1/N of the users, every shard
+ * is written under its own lock (different shards are written in parallel), and the shards are read in parallel
+ * at startup. The main() method converts RegisteredUsers.json into shards and back, with the server stopped:
+ *   java ShardedUserPersistence split <N>     RegisteredUsers.json -> N shard files (RegisteredUsers.json is kept, there must be no shard files)
+ *   java ShardedUserPersistence merge <N>     N shard files -> RegisteredUsers.json (the shard files are deleted)
+ * The server refuses to start if the shard files on disk have another number of shards than the configured one.
+ */
+public class ShardedUserPersistence {
+  private final File[] files; // shard files
+  private final List<List<User>> users = new ArrayList<>(); // users of every shard, guarded by the shard's list
+  private final AtomicIntegerArray dirty; // 1 for the shards changed since their last write
+  private final Lock[] writers; // lock of every shard file, held while it's written
+  private final Function<String, Lock> lockFor; // lock guarding a user, held while serializing him
+  private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+  public ShardedUserPersistence(File registeredUsersJSON, int shards, Function<String, Lock> lockFor) {
+    File parent = registeredUsersJSON.getAbsoluteFile().getParentFile();
+    String name = registeredUsersJSON.getName().replaceFirst("\\.json$", "");
+
+    this.files = new File[shards];
+    this.writers = new Lock[shards];
+
+    for (int i=0; i<shards; i++) {
+      this.files[i] = new File(parent, name + "." + i + "-of-" + shards + ".json");
+      this.users.add(new ArrayList<>());
+      this.writers[i] = new ReentrantLock();
+    }
+
+    this.dirty = new AtomicIntegerArray(shards);
+    this.lockFor = lockFor;
+  }
+
+  // Returns the number of shards of the shard files next to "registeredUsersJSON", whatever it is, 0 if there are none
+  public static int count(File registeredUsersJSON) throws IOException {
+    File parent = registeredUsersJSON.getAbsoluteFile().getParentFile();
+    Pattern shardFile = Pattern.compile(Pattern.quote(registeredUsersJSON.getName().replaceFirst("\\.json$", "")) + "\\.\\d+-of-(\\d+)\\.json");
+    String[] names = parent.list();
+    int count = 0;
+
+    if (names != null) {
+      for (String name: names) {
+        Matcher matcher = shardFile.matcher(name);
+        if (!matcher.matches()) continue;
+
+        int shards = Integer.parseInt(matcher.group(1));
+        if (count != 0 && shards != count) throw new IOException("shard files of " + count + " and of " + shards + " shards, keep only the ones of the last split");
+        count = shards;
+      }
+    }
+
+    return count;
+  }
+
+  // Returns the shard of a username
+  public int shardOf(String username) {
+    int hash = username.hashCode(); // the same in every JVM
+    hash ^= (hash >>> 16); // spread the high bits, like HashMap does
+
+    return Math.floorMod(hash, this.files.length);
+  }
+
+  // Read the users of every shard file, one shard per core at a time, and take them in charge
+  public List<User> load() throws IOException {
+    List<List<User>> loaded;
+
+    try {
+      loaded = IntStream.range(0, this.files.length).parallel().mapToObj(shard -> {
+        try {return read(this.files[shard]);}
+        catch (IOException e) {throw new UncheckedIOException(e);}
+      }).collect(Collectors.toList());
+    }
+    catch (UncheckedIOException e) {throw e.getCause();}
+
+    List<User> all = new ArrayList<>();
+
+    for (int shard=0; shard<this.files.length; shard++) {
+      for (User user: loaded.get(shard)) {
+        if (shardOf(user.getUsername()) != shard) throw new IOException(user.getUsername() + " is in the wrong shard, the files were written with another number of shards");
+      }
+
+      synchronized (this.users.get(shard)) {this.users.get(shard).addAll(loaded.get(shard));}
+      all.addAll(loaded.get(shard));
+    }
+
+    return all;
+  }
+
+  // A new user was registered
+  public void registered(User user) {
+    int shard = shardOf(user.getUsername());
+
+    synchronized (this.users.get(shard)) {this.users.get(shard).add(user);}
+    this.dirty.set(shard, 1);
+  }
+
+  // A user changed, his shard will be written on the next flush
+  public void changed(User user) {
+    this.dirty.set(shardOf(user.getUsername()), 1);
+  }
+
+  // Returns the number of shards waiting to be written
+  public int getDirtyCount() {
+    int count = 0;
+    for (int shard=0; shard<this.files.length; shard++) count += this.dirty.get(shard);
+    return count;
+  }
+
+  // Mark every shard to be written, e.g. when the users come from RegisteredUsers.json
+  public void markAllDirty() {
+    for (int shard=0; shard<this.files.length; shard++) this.dirty.set(shard, 1);
+  }
+
+  // Write the shards changed since their last write, in parallel
+  public void flush() throws IOException {
+    try {
+      IntStream.range(0, this.files.length).parallel().filter(shard -> this.dirty.get(shard) == 1).forEach(shard -> {
+        try {write(shard);}
+        catch (IOException e) {throw new UncheckedIOException(e);}
+      });
+    }
+    catch (UncheckedIOException e) {throw e.getCause();}
+  }
+
+  // Write a shard, holding its lock so two writes of the same file never overlap
+  private void write(int shard) throws IOException {
+    Lock writer = this.writers[shard];
+    writer.lock();
+
+    try {
+      if (this.dirty.getAndSet(shard, 0) == 0) return; // written meanwhile; users changed from now on will be written by the next flush
+
+      List<User> users;
+      synchronized (this.users.get(shard)) {users = new ArrayList<>(this.users.get(shard));} // copy the list, new users can be registered meanwhile
+
+      try {
+        JsonArray array = new JsonArray();
+
+        // Serialize every user while holding his lock so he's never seen half updated
+        for (User user: users) {
+          Lock lock = this.lockFor.apply(user.getUsername());
+          lock.lock();
+
+          try {array.add(this.gson.toJsonTree(user));}
+          finally {lock.unlock();}
+        }
+
+        writeFile(this.files[shard], this.gson.toJson(array));
+      }
+      catch (IOException | RuntimeException e) {
+        this.dirty.set(shard, 1); // not written: keep it dirty, the next flush will try again
+        throw e;
+      }
+    }
+    finally {writer.unlock();}
+  }
+
+  // Read the users of a JSON file, an empty list if it doesn't exist
+  private static List<User> read(File file) throws IOException {
+    List<User> users = new ArrayList<>();
+    UserLoader.load(file, users::add);
+    return users;
+  }
+
+  // Write to a temporary file and then replace the old one, so a crash never leaves a half written file
+  private static void writeFile(File file, String json) throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    try (FileWriter writer = new FileWriter(tmp)) {writer.write(json);}
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  // Convert RegisteredUsers.json into shards ("split") or back ("merge"), in the working directory
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2 || !(args[0].equals("split") || args[0].equals("merge"))) {
+      System.err.println("usage: java ShardedUserPersistence split|merge <shards>");
+      System.exit(1);
+    }
+
+    File registeredUsersJSON = new File("RegisteredUsers.json");
+    ShardedUserPersistence shards = new ShardedUserPersistence(registeredUsersJSON, Integer.parseInt(args[1]), username -> new ReentrantLock()); // nobody else changes the users
+
+    int existing = count(registeredUsersJSON);
+
+    if (args[0].equals("split")) {
+      if (existing != 0) throw new IOException("there are already shard files of " + existing + " shards, they may be newer than " + registeredUsersJSON + ": merge them first");
+
+      List<User> users = read(registeredUsersJSON);
+      for (User user: users) shards.registered(user);
+
+      shards.markAllDirty(); // empty shards too, so no old shard file is left behind
+      shards.flush();
+      System.out.println(users.size() + " users written to " + args[1] + " shards");
+    }
+    else {
+      if (existing != shards.files.length) throw new IOException("no shard files of " + args[1] + " shards" + (existing != 0 ? ", there are shard files of " + existing + " shards" : ""));
+
+      List<User> users = shards.load();
+      writeFile(registeredUsersJSON, shards.gson.toJson(users));
+      for (File file: shards.files) Files.deleteIfExists(file.toPath()); // RegisteredUsers.json is the authoritative copy now, a later split starts from it
+      System.out.println(users.size() + " users written to " + registeredUsersJSON);
+    }
+  }
+}
@@ -0,0 +1,119 @@
+// I/O imports
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+// Connection imports
+import java.net.InetSocketAddress;
+
+// Utility imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Sends the shared results to the multicast group from its own thread, so a share never waits for a send.
+ * The messages that arrive within "window" milliseconds of the first one waiting are sent together, in as few
+ * datagrams as possible that fit in an Ethernet MTU:
+ *   [BATCH u8][length u16][UTF-8 bytes][length u16][UTF-8 bytes]...
+ * BATCH is never the first byte of a UTF-8 text, so decode() also reads the datagrams of a single message in
+ * plain text sent by older servers. A message too long for a datagram of its own is sent alone anyway.
+ */
+public class SharePublisher implements Closeable {
+  public static final int BATCH = 0xB2; // first byte of a batched datagram, a UTF-8 continuation byte
+  public static final int MAX_DATAGRAM = 1500 - 20 - 8; // Ethernet MTU without IPv4 and UDP headers
+  public static final int MAX_RECEIVE = 65507; // largest UDP payload, a single long message
+  private static final byte[] CLOSE = new byte[0]; // queued by close(), after the last message
+
+  private final DatagramChannel channel; // channel used to send the datagrams
+  private final InetSocketAddress group; // multicast group
+  private final long window; // how long the first message waits for others, in ms
+  private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(); // messages waiting to be sent, UTF-8 encoded
+  private final Thread publisher;
+
+  public SharePublisher(DatagramChannel channel, InetSocketAddress group, long window) {
+    this.channel = channel;
+    this.group = group;
+    this.window = window;
+
+    this.publisher = new Thread(this::publish, "share-publisher");
+    this.publisher.setDaemon(true); // don't keep the server alive only for this thread
+    this.publisher.start();
+  }
+
+  // Queue a message for the multicast group, it never blocks
+  public void share(String message) {
+    byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > MAX_RECEIVE - 3) bytes = Arrays.copyOf(bytes, MAX_RECEIVE - 3); // only an absurdly long username, it must fit in a datagram
+
+    this.queue.add(bytes);
+  }
+
+  // Send the messages still waiting and stop the publisher thread
+  public void close() {
+    this.queue.add(CLOSE);
+
+    try {this.publisher.join();}
+    catch (InterruptedException e) {Thread.currentThread().interrupt();}
+  }
+
+  // Returns the messages of a datagram received from the multicast group, batched or not
+  public static List<String> decode(byte[] data, int length) {
+    List<String> messages = new ArrayList<>();
+
+    if (length == 0 || (data[0] & 0xFF) != BATCH) {
+      messages.add(new String(data, 0, length, StandardCharsets.UTF_8)); // a single message in plain text
+      return messages;
+    }
+
+    ByteBuffer datagram = ByteBuffer.wrap(data, 1, length - 1);
+    while (datagram.remaining() >= 2) {
+      int size = datagram.getShort() & 0xFFFF;
+      if (size > datagram.remaining()) break; // truncated datagram, not sent by us
+
+      messages.add(new String(data, datagram.position(), size, StandardCharsets.UTF_8));
+      datagram.position(datagram.position() + size);
+    }
+
+    return messages;
+  }
+
+  // Send the messages in batches until closed
+  private void publish() {
+    ByteBuffer datagram = ByteBuffer.allocate(MAX_RECEIVE); // reused by every batch
+    byte[] next = null; // first message of the next batch, it didn't fit in the last one
+
+    try {
+      while (next != CLOSE) {
+        if (next == null) next = this.queue.take(); // wait for the first message
+        if (next == CLOSE) break;
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.window);
+        datagram.clear();
+        datagram.put((byte) BATCH);
+
+        // Add messages while they fit, waiting for them until the end of the window
+        while (next != null && next != CLOSE && (datagram.position() == 1 || datagram.position() + 2 + next.length <= MAX_DATAGRAM)) {
+          datagram.putShort((short) next.length).put(next);
+          next = this.queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        send(datagram);
+      }
+    }
+    catch (InterruptedException e) {} // nobody interrupts it, an interrupted send would close the channel
+  }
+
+  // Send a batched datagram
+  private void send(ByteBuffer datagram) {
+    datagram.flip();
+
+    try {this.channel.send(datagram, this.group);}
+    catch (IOException e) {e.printStackTrace();} // the results are saved anyway, only the notification is lost
+  }
+}
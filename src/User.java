@@ -1,23 +1,50 @@
+// I/O imports
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 // Utility imports
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 
+// GSON imports
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/*
+ * A registered user. The statistics are primitive ints and the guess distribution an int[12] ("tries" 1..12
+ * at index tries - 1), so a finished game increments a few fields in place, without boxing or allocations.
+ * Every change is made holding the user's lock (UserStore.lockFor), which makes the increments atomic and
+ * keeps the statistics and the guess distribution consistent with each other.
+ * The played words are a PlayedWords set of dictionary indexes, so checking a word is O(1) whatever the history.
+ * The JSON format of RegisteredUsers.json is unchanged, written and read by the Adapter below (the played words
+ * are written as words of the dictionary; the words of a list that aren't in it can't be played again, so
+ * they're dropped when it's read):
+ *   {"username": ..., "password": ..., "statistics": [games, wins, current streak, max streak],
+ *    "guessDistribution": {"1": count, ..., "12": count}, "playedWords": [...], "sharedMessages": [...]}
+ */
+@JsonAdapter(User.Adapter.class)
 public class User {
-  private String username; 
-  private String password;
-  private List<Integer> statistics;
-  private ConcurrentHashMap<Integer, Integer> guessDistribution;
-  private List<String> playedWords;
+  public static final int MAX_TRIES = 12; // tries of a game, and entries of the guess distribution
+  public static final int MAX_USERNAME = 32; // characters of a username, so the usernames of a leaderboard always fit a binary frame
+
+  private final String username;
+  private final String password;
+  private int games; // games played
+  private int wins; // games won
+  private int currentStreak; // games won in a row, up to the last one
+  private int maxStreak; // longest streak of games won
+  private final int[] guessDistribution = new int[MAX_TRIES]; // games won in 1..12 tries
+  private PlayedWords playedWords = new PlayedWords(); // indexes of the played words in the dictionary
   private List<String> sharedMessages;
 
-  public User(String username, String password, List<Integer> statistics, ConcurrentHashMap<Integer, Integer> guessDistribution, List<String> playedWords, List<String> sharedMessages) {
+  // Create a new registered user with empty statistics
+  public User(String username, String password) {
     this.username = username;
     this.password = password;
-    this.statistics = statistics;
-    this.guessDistribution = guessDistribution;
-    this.playedWords = playedWords;
-    this.sharedMessages = sharedMessages;
+    this.sharedMessages = new ArrayList<>();
   }
 
   // Returns the username
@@ -30,18 +57,33 @@ public class User {
     return this.password;
   }
 
-  // Returns the statistics list
-  public List<Integer> getStatistics() {
-    return this.statistics;
+  // Returns the games played
+  public int getGames() {
+    return this.games;
+  }
+
+  // Returns the games won
+  public int getWins() {
+    return this.wins;
+  }
+
+  // Returns the current streak of games won
+  public int getCurrentStreak() {
+    return this.currentStreak;
   }
 
-  // Returns the guessDistribution
-  public ConcurrentHashMap<Integer, Integer> getGuessDistribution() {
-    return this.guessDistribution;
+  // Returns the longest streak of games won
+  public int getMaxStreak() {
+    return this.maxStreak;
   }
 
-  // Returns the played words
-  public List<String> getPlayedWords() {
+  // Returns the games won in "tries" tries (1..12)
+  public int getGuessCount(int tries) {
+    return this.guessDistribution[tries - 1];
+  }
+
+  // Returns the played words, as indexes in the dictionary
+  public PlayedWords getPlayedWords() {
     return this.playedWords;
   }
 
@@ -50,29 +92,153 @@ public class User {
     return this.sharedMessages;
   }
 
-  // Set the statistics list
-  public void setStatistics(Integer games, Integer wins, Integer currentStreak, Integer maxStreak) {
-    List<Integer> stats = new ArrayList<Integer>();
-    stats.add(games);
-    stats.add(wins);
-    stats.add(currentStreak);
-    stats.add(maxStreak);
+  // A game won in "tries" tries: one more game, win and streak, and one more entry in the guess distribution
+  public void addWin(int tries) {
+    this.games++;
+    this.wins++;
+    this.currentStreak++;
+    this.maxStreak = Math.max(this.maxStreak, this.currentStreak);
+    this.guessDistribution[tries - 1]++;
+  }
 
-    this.statistics = stats;
+  // A game lost: one more game, and the streak is over
+  public void addLoss() {
+    this.games++;
+    this.currentStreak = 0;
   }
 
-  // Set the guess distribution
-  public void setGuessDistribution(ConcurrentHashMap<Integer, Integer> update) {
-    this.guessDistribution = update;
+  // Set the statistics, e.g. read from a file
+  public void setStatistics(int games, int wins, int currentStreak, int maxStreak) {
+    this.games = games;
+    this.wins = wins;
+    this.currentStreak = currentStreak;
+    this.maxStreak = maxStreak;
   }
 
-  // Set the played words list
-  public void setPlayedWords(List<String> playedWords) {
-    this.playedWords = playedWords;
+  // Set the games won in "tries" tries (1..12), e.g. read from a file
+  public void setGuessCount(int tries, int count) {
+    this.guessDistribution[tries - 1] = count;
   }
 
   // Set the shared messages list
   public void setSharedMessages(List<String> sharedMessages) {
     this.sharedMessages = sharedMessages;
   }
-}
\ No newline at end of file
+
+  // Writes and reads a user in the JSON format of RegisteredUsers.json, used by every Gson instance
+  static class Adapter extends TypeAdapter<User> {
+    @Override
+    public void write(JsonWriter out, User user) throws IOException {
+      if (user == null) {
+        out.nullValue();
+        return;
+      }
+
+      out.beginObject();
+      out.name("username").value(user.username);
+      out.name("password").value(user.password);
+
+      out.name("statistics").beginArray();
+      out.value(user.games).value(user.wins).value(user.currentStreak).value(user.maxStreak);
+      out.endArray();
+
+      out.name("guessDistribution").beginObject();
+      for (int tries=1; tries<=MAX_TRIES; tries++) out.name(String.valueOf(tries)).value(user.guessDistribution[tries - 1]);
+      out.endObject();
+
+      WordDictionary dictionary = WordDictionary.shared();
+      out.name("playedWords").beginArray();
+      user.playedWords.forEach(index -> {
+        try {out.value(dictionary.get(index));}
+        catch (IOException e) {throw new UncheckedIOException(e);}
+      });
+      out.endArray();
+
+      out.name("sharedMessages");
+      writeStrings(out, user.sharedMessages);
+      out.endObject();
+    }
+
+    @Override
+    public User read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+
+      String username = null, password = null;
+      int[] statistics = new int[4];
+      int[] guessDistribution = new int[MAX_TRIES];
+      PlayedWords playedWords = new PlayedWords();
+      List<String> sharedMessages = new ArrayList<>();
+
+      in.beginObject();
+
+      while (in.hasNext()) {
+        String name = in.nextName();
+
+        if (in.peek() == JsonToken.NULL) {
+          in.nextNull(); // a missing value, the default is kept
+          continue;
+        }
+
+        switch (name) {
+          case "username": username = in.nextString(); break;
+          case "password": password = in.nextString(); break;
+          case "statistics":
+            in.beginArray();
+            for (int i=0; in.hasNext(); i++) {
+              int value = in.nextInt();
+              if (i < statistics.length) statistics[i] = value;
+            }
+            in.endArray();
+            break;
+          case "guessDistribution":
+            in.beginObject();
+            while (in.hasNext()) {
+              int tries = Integer.parseInt(in.nextName());
+              int count = in.nextInt();
+              if (tries >= 1 && tries <= MAX_TRIES) guessDistribution[tries - 1] = count;
+            }
+            in.endObject();
+            break;
+          case "playedWords":
+            WordDictionary dictionary = WordDictionary.shared();
+            in.beginArray();
+            while (in.hasNext()) {
+              int index = dictionary.indexOf(in.nextString());
+              if (index >= 0) playedWords.add(index); // a repeated word is kept once
+            }
+            in.endArray();
+            break;
+          case "sharedMessages": readStrings(in, sharedMessages); break;
+          default: in.skipValue(); // not a field of ours
+        }
+      }
+
+      in.endObject();
+
+      User user = new User(username, password);
+      user.setStatistics(statistics[0], statistics[1], statistics[2], statistics[3]);
+      System.arraycopy(guessDistribution, 0, user.guessDistribution, 0, MAX_TRIES);
+      user.playedWords = playedWords;
+      user.sharedMessages = sharedMessages;
+
+      return user;
+    }
+
+    // Write a list of strings as an array
+    private static void writeStrings(JsonWriter out, List<String> strings) throws IOException {
+      out.beginArray();
+      for (String string: strings) out.value(string);
+      out.endArray();
+    }
+
+    // Read an array of strings into a list
+    private static void readStrings(JsonReader in, List<String> strings) throws IOException {
+      in.beginArray();
+      while (in.hasNext()) strings.add(in.nextString());
+      in.endArray();
+    }
+  }
+}
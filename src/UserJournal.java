@@ -0,0 +1,317 @@
+// I/O imports
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+// Utility imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/*
+ * Append-only log of user mutations. Records are buffered in memory and written with a single fsync
+ * every "commit interval" (group commit), so a crash loses at most the records of the last interval.
+ * The log is split in numbered segments ("RegisteredUsers.journal.<n>"): compaction starts a new segment,
+ * writes a fresh snapshot of the users and then deletes the old segments.
+ * Every record is idempotent (it carries absolute values or positions), so replaying a segment already
+ * folded into the snapshot (crash during compaction) leaves the users unchanged.
+ */
+public class UserJournal {
+  // Record types
+  private static final byte REGISTER = 1;
+  private static final byte PLAYED_WORD_ADDED = 2;
+  private static final byte PLAYED_WORD_REMOVED = 3;
+  private static final byte STATISTICS = 4;
+  private static final byte SHARE = 5;
+
+  private final File directory; // directory containing the segments
+  private final String prefix; // segments file name prefix
+  private ByteArrayOutputStream pending = new ByteArrayOutputStream(); // records waiting for the next group commit
+  private int pendingRecords = 0; // number of records in "pending"
+  private long segment; // number of the segment currently written
+  private FileChannel channel; // channel of the segment currently written
+  private final Object commitLock = new Object(); // serializes the group commits
+  private Exception torn = null; // failed write that couldn't be cut back, guarded by commitLock
+
+  public UserJournal(File snapshot) {
+    File parent = snapshot.getAbsoluteFile().getParentFile();
+    String name = snapshot.getName();
+
+    this.directory = parent;
+    this.prefix = (name.endsWith(".json") ? name.substring(0, name.length() - 5) : name) + ".journal.";
+  }
+
+  // Replay all the segments on top of the users read from the snapshot, in segment order
+  public void replay(List<User> users) throws IOException {
+    Map<String, User> usersMAP = new HashMap<>(); // index the users to apply the records
+    for (User u: users) usersMAP.put(u.getUsername(), u);
+
+    long[] segments = segments();
+
+    for (long n: segments) {
+      byte[] data = Files.readAllBytes(segmentFile(n).toPath());
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+      while (true) {
+        byte[] body;
+
+        try {
+          int length = in.readInt(); // length of the record
+          long crc = in.readInt() & 0xFFFFFFFFL; // checksum of the record
+          if (length < 0 || length > in.available()) break; // torn write, the record was never completed
+
+          body = new byte[length];
+          in.readFully(body);
+
+          CRC32 check = new CRC32();
+          check.update(body);
+          if (check.getValue() != crc) break; // torn write, the rest of the segment was never committed
+        }
+        catch (EOFException e) {break;} // end of the segment or torn write
+
+        apply(body, users, usersMAP);
+      }
+    }
+
+    this.segment = segments.length == 0 ? 0 : segments[segments.length - 1] + 1; // never append after a torn record
+  }
+
+  // Apply a single record to the users
+  private static void apply(byte[] body, List<User> users, Map<String, User> usersMAP) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+
+    byte type = in.readByte();
+    String username = in.readUTF();
+    User user = usersMAP.get(username);
+
+    if (type == REGISTER) {
+      String password = in.readUTF();
+
+      if (user == null) {
+        user = new User(username, password);
+        users.add(user);
+        usersMAP.put(username, user);
+      }
+
+      return;
+    }
+
+    if (user == null) return; // the user isn't registered, ignore the record
+
+    if (type == PLAYED_WORD_ADDED) {
+      int index = WordDictionary.shared().indexOf(in.readUTF());
+      if (index >= 0) user.getPlayedWords().add(index); // nothing if already applied
+    }
+
+    if (type == PLAYED_WORD_REMOVED) {
+      user.getPlayedWords().remove(WordDictionary.shared().indexOf(in.readUTF()));
+    }
+
+    if (type == STATISTICS) {
+      user.setStatistics(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+      for (int tries=1; tries<=User.MAX_TRIES; tries++) user.setGuessCount(tries, in.readInt());
+    }
+
+    if (type == SHARE) {
+      int index = in.readInt(); // position of the message in the shared messages list
+      String message = in.readUTF();
+      if (user.getSharedMessages().size() == index) user.getSharedMessages().add(message); // skip already applied messages
+    }
+  }
+
+  // Start writing a new segment
+  public synchronized void open() throws IOException {
+    this.channel = FileChannel.open(segmentFile(this.segment).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    forceDirectory(this.directory); // the name of the new segment is durable before its first group commit
+  }
+
+  // Record that a new user registered
+  public void registered(User user) {
+    append(REGISTER, user.getUsername(), out -> out.writeUTF(user.getPassword()));
+  }
+
+  // Record that a user started to play a word
+  public void playedWordAdded(User user, String word) {
+    append(PLAYED_WORD_ADDED, user.getUsername(), out -> out.writeUTF(word));
+  }
+
+  // Record that a user's game was cancelled because the word changed
+  public void playedWordRemoved(User user, String word) {
+    append(PLAYED_WORD_REMOVED, user.getUsername(), out -> out.writeUTF(word));
+  }
+
+  // Record the current statistics and guess distribution of a user
+  public void statisticsUpdated(User user) {
+    int[] values = new int[16];
+    values[0] = user.getGames();
+    values[1] = user.getWins();
+    values[2] = user.getCurrentStreak();
+    values[3] = user.getMaxStreak();
+    for (int tries=1; tries<=User.MAX_TRIES; tries++) values[tries + 3] = user.getGuessCount(tries);
+
+    append(STATISTICS, user.getUsername(), out -> {for (int value: values) out.writeInt(value);});
+  }
+
+  // Record that a user shared a message, "index" is its position in the shared messages list
+  public void messageShared(User user, int index, String message) {
+    append(SHARE, user.getUsername(), out -> {
+      out.writeInt(index);
+      out.writeUTF(message);
+    });
+  }
+
+  // Encode a record and add it to the pending records
+  private void append(byte type, String username, RecordWriter payload) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(type);
+      out.writeUTF(username);
+      payload.write(out);
+    }
+    catch (IOException e) {throw new UncheckedIOException(e);} // can't happen writing to memory
+
+    byte[] body = bytes.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(body);
+
+    ByteBuffer header = ByteBuffer.allocate(8);
+    header.putInt(body.length);
+    header.putInt((int) crc.getValue());
+
+    synchronized (this) {
+      this.pending.writeBytes(header.array());
+      this.pending.writeBytes(body);
+      this.pendingRecords++;
+    }
+  }
+
+  // Returns the number of records waiting for the next group commit
+  public synchronized int getPendingCount() {
+    return this.pendingRecords;
+  }
+
+  // Write all pending records to the current segment with a single fsync. If the write fails the segment is cut back to its size
+  // before the write, so no torn record is left for replay, and the records are put back in front of the pending ones for the next commit
+  public void commit() throws IOException {
+    synchronized (this.commitLock) { // one group at a time, the size before the write must be the end of the last group
+      if (this.torn != null) throw new IOException("The journal segment has a torn record, no record can be appended after it", this.torn);
+
+      byte[] records;
+      int count;
+      FileChannel channel;
+      long size;
+
+      synchronized (this) {
+        if (this.pending.size() == 0) return; // nothing to write
+
+        channel = this.channel;
+        size = channel.size(); // the channel only grows in commit()
+        records = this.pending.toByteArray();
+        count = this.pendingRecords;
+        this.pending = new ByteArrayOutputStream();
+        this.pendingRecords = 0;
+      }
+
+      try {
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+        while (buffer.hasRemaining()) channel.write(buffer);
+        channel.force(false); // make the whole group durable
+      }
+      catch (IOException | RuntimeException e) {
+        try {channel.truncate(size);}
+        catch (IOException t) { // replay would stop at the torn record and skip the next groups: stop committing
+          e.addSuppressed(t);
+          this.torn = e;
+        }
+
+        synchronized (this) {
+          ByteArrayOutputStream restored = new ByteArrayOutputStream(records.length + this.pending.size());
+          restored.writeBytes(records);
+          restored.writeBytes(this.pending.toByteArray()); // records appended during the write
+          this.pending = restored;
+          this.pendingRecords += count;
+        }
+
+        throw e;
+      }
+    }
+  }
+
+  // Commit the pending records and continue on a new segment, returns the number of the closed segment
+  public long rotate() throws IOException {
+    commit();
+
+    synchronized (this) {
+      this.channel.close();
+      long closed = this.segment++;
+      open();
+      return closed;
+    }
+  }
+
+  // Returns true if there are segments on disk, changes that a snapshot may not contain yet
+  public boolean exists() {
+    return segments().length > 0;
+  }
+
+  // Delete all segments up to "last" (included), they have been folded into a snapshot
+  public void deleteUpTo(long last) throws IOException {
+    for (long n: segments()) {
+      if (n <= last) Files.deleteIfExists(segmentFile(n).toPath());
+    }
+  }
+
+  // Commit the pending records and close the current segment
+  public void close() throws IOException {
+    commit();
+
+    synchronized (this) {this.channel.close();}
+  }
+
+  // Returns the sorted numbers of the segments on disk
+  private long[] segments() {
+    List<Long> numbers = new ArrayList<>();
+    String[] names = this.directory.list();
+
+    if (names != null) {
+      for (String name: names) {
+        if (!name.startsWith(this.prefix)) continue;
+
+        try {numbers.add(Long.parseLong(name.substring(this.prefix.length())));}
+        catch (NumberFormatException e) {} // not a segment
+      }
+    }
+
+    long[] segments = numbers.stream().mapToLong(Long::longValue).toArray();
+    Arrays.sort(segments);
+    return segments;
+  }
+
+  // Force the entries of a directory to disk, so the files created, renamed or deleted in it survive a power loss
+  public static void forceDirectory(File directory) throws IOException {
+    try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {channel.force(true);}
+  }
+
+  // Returns the file of a segment
+  private File segmentFile(long n) {
+    return new File(this.directory, this.prefix + n);
+  }
+
+  // Writes the payload of a record
+  private interface RecordWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+}
@@ -0,0 +1,187 @@
+// I/O imports
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+
+// Utility imports
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+// GSON imports
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/*
+ * Streaming load of a users file (RegisteredUsers.json or a shard file) at startup, never holding the whole
+ * document in memory. The reading thread only finds where every user object begins and ends (a scan of the
+ * characters that tracks braces and strings) and cuts the array in batches of users; the batches are decoded
+ * into Users through Gson's User adapter by the common ForkJoinPool, one batch per core, while the next ones
+ * are read. At most a few batches are in flight, and the decoded users are handed to the consumer in file
+ * order, so the indexes are built while the file is still being read. With a single core there's nothing
+ * to split: the users are decoded one at a time straight from the JsonReader of the file.
+ * A null entry of the array isn't a user and is skipped.
+ */
+public class UserLoader {
+  private static final int BATCH_SIZE = 1024; // users decoded by a single task
+  private static final TypeAdapter<User> adapter = new Gson().getAdapter(User.class); // thread safe, decoding doesn't need pretty printing
+
+  // Position of the scan in the document
+  private static final int BEFORE_ARRAY = 0;
+  private static final int IN_ARRAY = 1;
+  private static final int AFTER_ARRAY = 2;
+
+  // Read the users of a JSON file and pass them to "consumer" in file order, returns the number of users read
+  public static int load(File file, Consumer<User> consumer) throws IOException {
+    return Runtime.getRuntime().availableProcessors() == 1 ? stream(file, consumer) : parallel(file, consumer);
+  }
+
+  // Find the users while the file is read and decode them in batches on the common pool, returns the number of users read
+  static int parallel(File file, Consumer<User> consumer) throws IOException {
+    if (!file.exists() || file.length() == 0) return 0;
+
+    int window = 2 * ForkJoinPool.getCommonPoolParallelism(); // batches in flight, enough to keep every core busy
+    ArrayDeque<CompletableFuture<User[]>> decoding = new ArrayDeque<>();
+    int count = 0;
+
+    try (FileReader reader = new FileReader(file)) {
+      char[] buffer = new char[65536];
+      StringBuilder batch = new StringBuilder("["); // the users of the batch, as a JSON array
+      int users = 0; // users in the batch
+      int state = BEFORE_ARRAY;
+      int depth = 0; // nesting of the user currently read, 0 between two users
+      boolean string = false; // inside a string of the user
+      boolean escape = false; // the previous character was a backslash inside a string
+      int literal = 0; // characters of a null entry read so far
+      int read;
+
+      while ((read = reader.read(buffer)) != -1) {
+        int start = 0; // first character of the current user in the buffer
+
+        for (int i=0; i<read; i++) {
+          char c = buffer[i];
+
+          if (depth > 0) {
+            if (escape) escape = false;
+            else if (string) {
+              if (c == '\\') escape = true;
+              else if (c == '"') string = false;
+            }
+            else if (c == '"') string = true;
+            else if (c == '{' || c == '[') depth++;
+            else if ((c == '}' || c == ']') && --depth == 0) {
+              batch.append(buffer, start, i + 1 - start); // the user ends here
+
+              if (++users == BATCH_SIZE) {
+                count += submit(decoding, batch, users, window, consumer);
+                batch = new StringBuilder("[");
+                users = 0;
+              }
+            }
+
+            continue;
+          }
+
+          if (literal > 0) { // inside a null entry
+            if (c != "null".charAt(literal)) throw new IOException("malformed users file " + file + ": unexpected '" + c + "'");
+            literal = (literal + 1) % 4;
+            continue;
+          }
+
+          if (Character.isWhitespace(c)) continue;
+
+          if (state == BEFORE_ARRAY && c == 'n') return 0; // "null", what Gson writes for no users
+          else if (state == BEFORE_ARRAY && c == '[') state = IN_ARRAY;
+          else if (state == IN_ARRAY && c == ',') continue;
+          else if (state == IN_ARRAY && c == 'n') literal = 1; // a null entry, not a user
+          else if (state == IN_ARRAY && c == ']') state = AFTER_ARRAY;
+          else if (state == IN_ARRAY && c == '{') { // a new user begins
+            if (users > 0) batch.append(',');
+            start = i;
+            depth = 1;
+          }
+          else throw new IOException("malformed users file " + file + ": unexpected '" + c + "'");
+        }
+
+        if (depth > 0) batch.append(buffer, start, read - start); // the user continues in the next buffer
+      }
+
+      if (state != AFTER_ARRAY) throw new IOException("malformed users file " + file + ": unexpected end of file");
+      if (users > 0) count += submit(decoding, batch, users, window, consumer);
+
+      while (!decoding.isEmpty()) count += deliver(decoding.poll(), consumer);
+    }
+    catch (UncheckedIOException e) {throw e.getCause();} // a malformed user
+    finally {
+      for (CompletableFuture<User[]> batch: decoding) batch.cancel(false); // the load failed, drop the batches not decoded yet
+    }
+
+    return count;
+  }
+
+  // Decode the users one at a time while the file is read, returns the number of users read
+  static int stream(File file, Consumer<User> consumer) throws IOException {
+    if (!file.exists() || file.length() == 0) return 0;
+
+    int count = 0;
+
+    try (JsonReader reader = new JsonReader(new FileReader(file))) {
+      if (reader.peek() == JsonToken.NULL) return 0; // "null", what Gson writes for no users
+
+      reader.beginArray();
+
+      while (reader.hasNext()) {
+        User user = adapter.read(reader);
+        if (user == null) continue;
+
+        consumer.accept(user);
+        count++;
+      }
+
+      reader.endArray();
+    }
+
+    return count;
+  }
+
+  // Start decoding a batch, and deliver the oldest one if too many are in flight; returns the number of users delivered
+  private static int submit(ArrayDeque<CompletableFuture<User[]>> decoding, StringBuilder batch, int users, int window, Consumer<User> consumer) {
+    String json = batch.append(']').toString();
+    decoding.add(CompletableFuture.supplyAsync(() -> decode(json, users), ForkJoinPool.commonPool()));
+
+    return decoding.size() > window ? deliver(decoding.poll(), consumer) : 0; // the heap holds at most "window" batches
+  }
+
+  // Decode the "length" users of a batch
+  private static User[] decode(String json, int length) {
+    User[] users = new User[length];
+
+    try (JsonReader reader = new JsonReader(new StringReader(json))) {
+      reader.beginArray();
+      for (int i=0; i<length; i++) users[i] = adapter.read(reader); // never null, the null entries aren't cut into the batches
+    }
+    catch (IOException e) {throw new UncheckedIOException(e);}
+
+    return users;
+  }
+
+  // Wait for a decoded batch and pass its users to the consumer, returns their number
+  private static int deliver(CompletableFuture<User[]> batch, Consumer<User> consumer) {
+    User[] users;
+
+    try {users = batch.join();}
+    catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause(); // e.g. the UncheckedIOException of a malformed user
+      throw e;
+    }
+
+    for (User user: users) consumer.accept(user);
+    return users.length;
+  }
+}
@@ -0,0 +1,494 @@
+// I/O imports
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Utility imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+// GSON imports
+import com.google.gson.GsonBuilder;
+
+/*
+ * Users persisted in fixed-layout binary files instead of RegisteredUsers.json ("records" mode of the UserStore):
+ * - RegisteredUsers.dat: a fixed-size slot per user with his 16 counters, mapped in memory, so a finished game is
+ *   a few in-place writes. The slots are 64 bytes and the header too, so a slot never crosses a page:
+ *     [magic int][version int][slot size int][slots per chunk int][padding to 64 bytes]
+ *     [slot: games, wins, current streak, max streak, guess distribution 1..12, all ints]...
+ *   The file is mapped in chunks of CHUNK_SLOTS slots, a new chunk is mapped when the registered users fill the last one.
+ * - RegisteredUsers.idx: the persistent username index, the n-th entry is the user of the n-th slot:
+ *     [magic int][version int][entry: username UTF, password UTF]...
+ * - RegisteredUsers.log: the append region of the variable-length data, played words and shared messages:
+ *     [magic int][version int][record: type byte, slot int, word or message index int + message UTF]...
+ * Every entry and record is framed by its length and CRC32 like the journal's, so a torn tail is dropped at
+ * startup. Index entries and records are buffered and written every sync interval, the index first, then the
+ * mapped slots are forced to disk (msync): a crash of the server alone loses no counter (they are in the page
+ * cache), a crash of the machine loses at most the changes of the last interval.
+ * The slots are little-endian like the other mapped files, the framed entries are written by Data streams like the journal's.
+ * The main() method converts RegisteredUsers.json into record files and back, with the server stopped:
+ *   java UserRecordFile convert     RegisteredUsers.json -> record files (RegisteredUsers.json is kept)
+ *   java UserRecordFile export      record files -> RegisteredUsers.json (the record files are deleted, so the
+ *                                   other modes, which refuse to start while they exist, can read RegisteredUsers.json)
+ */
+public class UserRecordFile {
+  private static final int DATA_MAGIC = 0x57555344; // "WUSD"
+  private static final int INDEX_MAGIC = 0x57555349; // "WUSI"
+  private static final int LOG_MAGIC = 0x5755534C; // "WUSL"
+  private static final int VERSION = 1;
+
+  private static final int COUNTERS = 16; // 4 statistics and 12 guess distribution counters
+  private static final int SLOT_SIZE = 4 * COUNTERS; // bytes of a slot
+  private static final int HEADER = SLOT_SIZE; // bytes of the data file header, the slots stay aligned to pages
+  private static final int CHUNK_SLOTS = 65536; // slots mapped together (4 MB)
+  private static final int FILE_HEADER = 8; // bytes of the index and log headers
+
+  // Record types of the append region
+  private static final byte PLAYED_WORD_ADDED = 1;
+  private static final byte PLAYED_WORD_REMOVED = 2;
+  private static final byte SHARE = 3;
+
+  private final File dataFile; // fixed-size slots of the counters
+  private final File indexFile; // usernames, in slot order
+  private final File logFile; // played words and shared messages
+  private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>(); // slot of every username
+  private final ReentrantLock syncLock = new ReentrantLock(); // held while syncing, so the files are written in order
+  private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0]; // mapped chunks of the slots
+  private ByteArrayOutputStream pendingIndex = new ByteArrayOutputStream(); // index entries waiting for the next sync
+  private ByteArrayOutputStream pendingLog = new ByteArrayOutputStream(); // records waiting for the next sync
+  private int pendingCount = 0; // entries and records waiting for the next sync
+  private Exception torn = null; // failed write that couldn't be cut back, guarded by syncLock
+  private int size = 0; // number of slots in use
+  private FileChannel data; // channel of the data file, kept open to map new chunks
+  private FileChannel index; // channel of the index file
+  private FileChannel log; // channel of the log file
+
+  public UserRecordFile(File registeredUsersJSON) {
+    File parent = registeredUsersJSON.getAbsoluteFile().getParentFile();
+    String name = registeredUsersJSON.getName().replaceFirst("\\.json$", "");
+
+    this.dataFile = new File(parent, name + ".dat");
+    this.indexFile = new File(parent, name + ".idx");
+    this.logFile = new File(parent, name + ".log");
+  }
+
+  // Returns true if the record files exist, the index file is the last one created
+  public boolean exists() {
+    return this.indexFile.length() >= FILE_HEADER;
+  }
+
+  // Open the record files, creating them the first time, and returns the users they contain
+  public synchronized List<User> open() throws IOException {
+    boolean created = !exists();
+    List<User> users = new ArrayList<>();
+
+    this.data = FileChannel.open(this.dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.index = FileChannel.open(this.indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.log = FileChannel.open(this.logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+    if (created) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(DATA_MAGIC).putInt(VERSION).putInt(SLOT_SIZE).putInt(CHUNK_SLOTS).position(HEADER).flip();
+      writeFully(this.data, header, 0);
+      writeFully(this.log, fileHeader(LOG_MAGIC), 0);
+      force();
+      writeFully(this.index, fileHeader(INDEX_MAGIC), 0); // last, the index header marks the record files as complete
+      this.index.force(false);
+    }
+    else {
+      ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+      readFully(this.data, header, 0);
+      if (header.getInt(0) != DATA_MAGIC || header.getInt(4) != VERSION || header.getInt(8) != SLOT_SIZE || header.getInt(12) != CHUNK_SLOTS) throw new IOException("not a user data file of version " + VERSION);
+
+      // The index entries: a user for every slot, with the counters of his slot
+      long indexLength = read(this.indexFile, INDEX_MAGIC, in -> {
+        User user = new User(in.readUTF(), in.readUTF());
+        int slot = this.size++;
+
+        if (slot % CHUNK_SLOTS == 0) mapChunk();
+        ByteBuffer chunk = this.chunks[slot / CHUNK_SLOTS];
+        int offset = (slot % CHUNK_SLOTS) * SLOT_SIZE;
+
+        int[] counters = new int[COUNTERS];
+        for (int i=0; i<COUNTERS; i++) counters[i] = chunk.getInt(offset + 4 * i);
+        user.setStatistics(counters[0], counters[1], counters[2], counters[3]);
+        for (int tries=1; tries<=User.MAX_TRIES; tries++) user.setGuessCount(tries, counters[tries + 3]);
+
+        users.add(user);
+        this.slots.put(user.getUsername(), slot);
+      });
+
+      // The records of the append region, in the order they were appended
+      long logLength = read(this.logFile, LOG_MAGIC, in -> {
+        byte type = in.readByte();
+        int slot = in.readInt();
+        if (slot < 0 || slot >= users.size()) return; // the index entry of the user was never synced, nor was he
+
+        User user = users.get(slot);
+
+        if (type == PLAYED_WORD_ADDED) {
+          int index = WordDictionary.shared().indexOf(in.readUTF());
+          if (index >= 0) user.getPlayedWords().add(index);
+        }
+
+        if (type == PLAYED_WORD_REMOVED) user.getPlayedWords().remove(WordDictionary.shared().indexOf(in.readUTF()));
+
+        if (type == SHARE) {
+          int position = in.readInt(); // position of the message in the shared messages list
+          String message = in.readUTF();
+          if (user.getSharedMessages().size() == position) user.getSharedMessages().add(message);
+        }
+      });
+
+      // Drop the torn tails, the next entries are appended right after the last whole one
+      this.index.truncate(indexLength);
+      this.log.truncate(logLength);
+    }
+
+    return users;
+  }
+
+  // A new user was registered: his slot is the next one, cleared in case a slot of a lost index entry was written
+  public synchronized void registered(User user) {
+    int slot = this.size;
+
+    if (slot % CHUNK_SLOTS == 0 && slot / CHUNK_SLOTS == this.chunks.length) {
+      try {mapChunk();}
+      catch (IOException e) {throw new UncheckedIOException(e);}
+    }
+
+    this.size++;
+    this.slots.put(user.getUsername(), slot);
+    writeCounters(slot, user);
+
+    this.pendingIndex.writeBytes(frame(out -> {
+      out.writeUTF(user.getUsername());
+      out.writeUTF(user.getPassword());
+    }));
+    this.pendingCount++;
+  }
+
+  // A user read from RegisteredUsers.json: register him and append his played words and shared messages
+  public void imported(User user) {
+    registered(user);
+    WordDictionary dictionary = WordDictionary.shared();
+    user.getPlayedWords().forEach(index -> playedWordAdded(user, dictionary.get(index)));
+    for (int i=0; i<user.getSharedMessages().size(); i++) messageShared(user, i, user.getSharedMessages().get(i));
+  }
+
+  // The statistics or the guess distribution of a user changed: write them in his slot
+  public void statisticsUpdated(User user) {
+    writeCounters(this.slots.get(user.getUsername()), user);
+  }
+
+  // A user started to play a word
+  public void playedWordAdded(User user, String word) {
+    append(PLAYED_WORD_ADDED, user, out -> out.writeUTF(word));
+  }
+
+  // A user's game was cancelled because the word changed
+  public void playedWordRemoved(User user, String word) {
+    append(PLAYED_WORD_REMOVED, user, out -> out.writeUTF(word));
+  }
+
+  // A user shared a message, "index" is its position in the shared messages list
+  public void messageShared(User user, int index, String message) {
+    append(SHARE, user, out -> {
+      out.writeInt(index);
+      out.writeUTF(message);
+    });
+  }
+
+  // Returns the number of index entries and records waiting for the next sync
+  public synchronized int getPendingCount() {
+    return this.pendingCount;
+  }
+
+  // Write the pending index entries and records, then force them and the mapped slots to disk. If the write fails the index
+  // and the log are cut back to their size before the write, so no torn frame is left to be dropped at startup with the
+  // entries after it, and the entries and records are put back in front of the pending ones for the next sync
+  public void sync() throws IOException {
+    this.syncLock.lock(); // one sync at a time, the sizes before the write must be the ends of the last sync
+
+    try {
+      if (this.torn != null) throw new IOException("The user record files have a torn entry, nothing can be appended after it", this.torn);
+
+      byte[] entries, records;
+      int count;
+      long indexSize = this.index.size(); // the files only grow in sync()
+      long logSize = this.log.size();
+
+      synchronized (this) {
+        entries = this.pendingIndex.toByteArray();
+        records = this.pendingLog.toByteArray();
+        count = this.pendingCount;
+        this.pendingIndex = new ByteArrayOutputStream();
+        this.pendingLog = new ByteArrayOutputStream();
+        this.pendingCount = 0;
+      }
+
+      try {
+        // The index first: a record is never on disk before the entry of its slot
+        if (entries.length > 0) {
+          writeFully(this.index, ByteBuffer.wrap(entries), indexSize);
+          this.index.force(false);
+        }
+
+        if (records.length > 0) writeFully(this.log, ByteBuffer.wrap(records), logSize);
+
+        force();
+      }
+      catch (IOException | RuntimeException e) {
+        try {
+          this.index.truncate(indexSize);
+          this.log.truncate(logSize);
+        }
+        catch (IOException | RuntimeException t) { // the entries of the next syncs would follow a torn frame and be dropped at startup: stop syncing
+          e.addSuppressed(t);
+          this.torn = e;
+        }
+
+        synchronized (this) {
+          ByteArrayOutputStream restored = new ByteArrayOutputStream(entries.length + this.pendingIndex.size());
+          restored.writeBytes(entries);
+          restored.writeBytes(this.pendingIndex.toByteArray()); // users registered during the write, their slots follow
+          this.pendingIndex = restored;
+
+          restored = new ByteArrayOutputStream(records.length + this.pendingLog.size());
+          restored.writeBytes(records);
+          restored.writeBytes(this.pendingLog.toByteArray()); // records appended during the write
+          this.pendingLog = restored;
+
+          this.pendingCount += count;
+        }
+
+        throw e;
+      }
+    }
+    finally {this.syncLock.unlock();}
+  }
+
+  // Sync everything still pending and close the files
+  public void close() throws IOException {
+    sync();
+
+    this.data.close();
+    this.index.close();
+    this.log.close();
+  }
+
+  // Force the log and the mapped slots to disk
+  private void force() throws IOException {
+    this.log.force(false);
+    for (MappedByteBuffer chunk: this.chunks) chunk.force();
+  }
+
+  // Map the next chunk of slots, growing the data file
+  private void mapChunk() throws IOException {
+    MappedByteBuffer chunk = this.data.map(FileChannel.MapMode.READ_WRITE, HEADER + (long) this.chunks.length * CHUNK_SLOTS * SLOT_SIZE, (long) CHUNK_SLOTS * SLOT_SIZE);
+    chunk.order(ByteOrder.LITTLE_ENDIAN);
+
+    MappedByteBuffer[] chunks = Arrays.copyOf(this.chunks, this.chunks.length + 1);
+    chunks[chunks.length - 1] = chunk;
+    this.chunks = chunks; // published to the writers of the other slots
+  }
+
+  // Write the counters of a user in his slot, in place
+  private void writeCounters(int slot, User user) {
+    ByteBuffer chunk = this.chunks[slot / CHUNK_SLOTS];
+    int offset = (slot % CHUNK_SLOTS) * SLOT_SIZE;
+
+    chunk.putInt(offset, user.getGames());
+    chunk.putInt(offset + 4, user.getWins());
+    chunk.putInt(offset + 8, user.getCurrentStreak());
+    chunk.putInt(offset + 12, user.getMaxStreak());
+    for (int tries=1; tries<=User.MAX_TRIES; tries++) chunk.putInt(offset + 4 * (tries + 3), user.getGuessCount(tries));
+  }
+
+  // Encode a record of the append region and add it to the pending records
+  private void append(byte type, User user, RecordWriter payload) {
+    int slot = this.slots.get(user.getUsername());
+
+    byte[] record = frame(out -> {
+      out.writeByte(type);
+      out.writeInt(slot);
+      payload.write(out);
+    });
+
+    synchronized (this) {
+      this.pendingLog.writeBytes(record);
+      this.pendingCount++;
+    }
+  }
+
+  // Encode an entry or a record, framed by its length and its checksum
+  private static byte[] frame(RecordWriter body) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(0); // length, set below
+      out.writeInt(0); // checksum, set below
+      body.write(out);
+    }
+    catch (IOException e) {throw new UncheckedIOException(e);} // can't happen writing to memory
+
+    ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+    CRC32 crc = new CRC32();
+    crc.update(frame.array(), 8, frame.capacity() - 8);
+    frame.putInt(0, frame.capacity() - 8);
+    frame.putInt(4, (int) crc.getValue());
+
+    return frame.array();
+  }
+
+  // Read the framed entries of a file after its header, returns the length of its whole entries
+  private static long read(File file, int magic, RecordReader apply) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))) {
+      if (in.readInt() != magic || in.readInt() != VERSION) throw new IOException(file + " isn't a user record file of version " + VERSION);
+
+      long length = FILE_HEADER;
+      long available = file.length();
+
+      // The body of every entry is read in the same buffer and decoded by the same stream
+      BodyStream body = new BodyStream();
+      DataInputStream bodyIn = new DataInputStream(body);
+      CRC32 check = new CRC32();
+
+      while (true) {
+        try {
+          int size = in.readInt(); // length of the entry
+          long crc = in.readInt() & 0xFFFFFFFFL; // checksum of the entry
+          if (size < 0 || length + 8 + size > available) break; // torn write, the entry was never completed
+
+          in.readFully(body.reset(size), 0, size);
+
+          check.reset();
+          check.update(body.bytes(), 0, size);
+          if (check.getValue() != crc) break; // torn write, the rest of the file was never synced
+
+          length += 8 + size;
+        }
+        catch (EOFException e) {break;} // end of the file or torn write
+
+        apply.read(bodyIn);
+      }
+
+      return length;
+    }
+  }
+
+  // Returns the header of the index or the log file
+  private static ByteBuffer fileHeader(int magic) {
+    ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+    header.putInt(magic).putInt(VERSION).flip();
+    return header;
+  }
+
+  // Write a whole buffer at a position of a channel
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) position += channel.write(buffer, position);
+  }
+
+  // Fill a buffer from a position of a channel
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read == -1) throw new EOFException("truncated user data file");
+      position += read;
+    }
+  }
+
+  // Convert RegisteredUsers.json into record files ("convert") or back ("export"), in the working directory
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1 || !(args[0].equals("convert") || args[0].equals("export"))) {
+      System.err.println("usage: java UserRecordFile convert|export");
+      System.exit(1);
+    }
+
+    File registeredUsersJSON = new File("RegisteredUsers.json");
+    UserRecordFile records = new UserRecordFile(registeredUsersJSON);
+
+    if (args[0].equals("convert")) {
+      List<User> users = new ArrayList<>();
+      UserLoader.load(registeredUsersJSON, users::add);
+
+      // Start from empty record files
+      Files.deleteIfExists(records.indexFile.toPath());
+      Files.deleteIfExists(records.logFile.toPath());
+      Files.deleteIfExists(records.dataFile.toPath());
+
+      records.open();
+      for (User user: users) records.imported(user);
+      records.close();
+
+      System.out.println(users.size() + " users written to " + records.dataFile.getName() + ", " + records.indexFile.getName() + " and " + records.logFile.getName());
+    }
+    else {
+      if (!records.exists()) throw new IOException("no user record files");
+
+      List<User> users = records.open();
+      records.close();
+
+      File tmp = new File(registeredUsersJSON.getPath() + ".tmp");
+      try (FileWriter writer = new FileWriter(tmp)) {new GsonBuilder().setPrettyPrinting().create().toJson(users, writer);}
+      Files.move(tmp.toPath(), registeredUsersJSON.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+      // RegisteredUsers.json is the authoritative copy again, the index first: without it the record files don't exist
+      Files.delete(records.indexFile.toPath());
+      Files.deleteIfExists(records.logFile.toPath());
+      Files.deleteIfExists(records.dataFile.toPath());
+
+      System.out.println(users.size() + " users written to " + registeredUsersJSON);
+    }
+  }
+
+  // Stream over the body of the entry being read, reused for every entry
+  private static class BodyStream extends ByteArrayInputStream {
+    BodyStream() {
+      super(new byte[256]);
+    }
+
+    // Make room for a body of "size" bytes and read it from the start, returns the buffer to fill
+    byte[] reset(int size) {
+      if (this.buf.length < size) this.buf = new byte[Math.max(size, 2 * this.buf.length)];
+
+      this.pos = 0;
+      this.count = size;
+      return this.buf;
+    }
+
+    // Returns the buffer of the body
+    byte[] bytes() {
+      return this.buf;
+    }
+  }
+
+  // Writes the body of an entry or a record
+  private interface RecordWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  // Reads the body of an entry or a record
+  private interface RecordReader {
+    void read(DataInputStream in) throws IOException;
+  }
+}
@@ -0,0 +1,370 @@
+// I/O imports
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Utility imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// GSON imports
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+
+/*
+ * In-memory store of the registered users, the list in memory is the authoritative copy.
+ * Changes are persisted in background in one of these modes:
+ * - "json": changed users are marked dirty and the whole RegisteredUsers.json is rewritten every flush interval;
+ * - "journal": every change is appended as a small record to a UserJournal (group commit every commit interval),
+ *   and RegisteredUsers.json becomes a snapshot rewritten only when the journal is compacted;
+ * - "shards": the users are spread by username over N files of a ShardedUserPersistence, and every flush
+ *   interval only the files of the changed users are rewritten;
+ * - "records": the counters of every user are written in place in his fixed-size slot of a UserRecordFile, the
+ *   played words and shared messages are appended to it, and everything is synced every sync interval.
+ * At startup the users are read by a UserLoader, streaming the file and decoding the users in parallel.
+ * Every change to a user must be done holding the lock returned by lockFor(username): the locks are striped
+ * by username, so operations on different users run in parallel.
+ */
+public class UserStore {
+  private static final int LOCK_STRIPES = 1024; // number of user locks, a power of 2
+
+  private final File registeredUsersJSON; // file JSON containing registered users
+  private final List<User> registeredUsersLIST = new ArrayList<>(); // in-memory list of registered users (source of truth), in registration order
+  private final ConcurrentHashMap<String, User> registeredUsersMAP = new ConcurrentHashMap<>(); // registered users indexed by username
+  private final Set<String> dirtyUsers = ConcurrentHashMap.newKeySet(); // usernames changed since the last flush
+  private final Gson gson = new GsonBuilder().setPrettyPrinting().create(); // shared Gson instance
+  private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES]; // user locks, striped by username
+  private UserJournal journal = null; // journal of the changes, null in "json" mode
+  private ShardedUserPersistence shards = null; // shard files of the users, only in "shards" mode
+  private UserRecordFile records = null; // record files of the users, only in "records" mode
+  private ScheduledExecutorService flusher = null; // background flush thread
+
+  // Create an empty store: the users are read by the start method of the persistence mode, from the files of that mode
+  public UserStore(File registeredUsersJSON) {
+    this.registeredUsersJSON = registeredUsersJSON;
+
+    for (int i=0; i<LOCK_STRIPES; i++) this.locks[i] = new ReentrantLock(); // initialize the user locks
+  }
+
+  // Returns a store of the users of the JSON file, not persisted in background, e.g. for the tools and the benchmarks
+  public static UserStore read(File registeredUsersJSON) throws IOException {
+    UserStore store = new UserStore(registeredUsersJSON);
+    store.load();
+    return store;
+  }
+
+  // Read all the registered users from the JSON file, indexing them by username while the file is read (nothing to read the first time the server starts); from now on the list in memory is the authoritative copy
+  private void load() throws IOException {
+    UserLoader.load(this.registeredUsersJSON, user -> {
+      this.registeredUsersLIST.add(user);
+      this.registeredUsersMAP.put(user.getUsername(), user);
+    });
+  }
+
+  // Read the users like load(), then fold in the segments left by a server in "journal" mode: they hold committed changes that
+  // RegisteredUsers.json may not contain, and the other modes never read them
+  private void loadWithJournal() throws IOException {
+    load();
+
+    UserJournal journal = new UserJournal(this.registeredUsersJSON);
+    if (!journal.exists()) return;
+
+    journal.replay(this.registeredUsersLIST);
+    for (User user: this.registeredUsersLIST) this.registeredUsersMAP.putIfAbsent(user.getUsername(), user); // index the users registered in the journal
+    writeSnapshot(snapshot());
+    journal.deleteUpTo(Long.MAX_VALUE); // every segment is now in the snapshot
+  }
+
+  // Returns the live list of registered users
+  public List<User> getUsers() {
+    return this.registeredUsersLIST;
+  }
+
+  // Returns the registered user with this username, or null
+  public User get(String username) {
+    return this.registeredUsersMAP.get(username);
+  }
+
+  // Returns the lock guarding the user with this username
+  public Lock lockFor(String username) {
+    int hash = username.hashCode();
+    hash ^= (hash >>> 16); // spread the high bits, like HashMap does
+
+    return this.locks[hash & (LOCK_STRIPES - 1)];
+  }
+
+  // Add a new registered user, returns false if the username is already in use
+  public synchronized boolean add(User user) {
+    if (this.registeredUsersMAP.putIfAbsent(user.getUsername(), user) != null) return false; // already registered
+
+    this.registeredUsersLIST.add(user);
+
+    if (this.journal != null) this.journal.registered(user);
+    else if (this.shards != null) this.shards.registered(user);
+    else if (this.records != null) this.records.registered(user);
+    else markDirty(user);
+
+    return true;
+  }
+
+  // The user started to play "word"
+  public void playedWordAdded(User user, String word) {
+    if (this.journal != null) this.journal.playedWordAdded(user, word);
+    else if (this.records != null) this.records.playedWordAdded(user, word);
+    else markDirty(user);
+  }
+
+  // The game of the user for "word" was cancelled
+  public void playedWordRemoved(User user, String word) {
+    if (this.journal != null) this.journal.playedWordRemoved(user, word);
+    else if (this.records != null) this.records.playedWordRemoved(user, word);
+    else markDirty(user);
+  }
+
+  // The statistics or the guess distribution of the user changed
+  public void statisticsUpdated(User user) {
+    if (this.journal != null) this.journal.statisticsUpdated(user);
+    else if (this.records != null) this.records.statisticsUpdated(user); // a few writes in his slot
+    else markDirty(user);
+  }
+
+  // The user appended "message" to his shared messages
+  public void messageShared(User user, String message) {
+    if (this.journal != null) this.journal.messageShared(user, user.getSharedMessages().size() - 1, message);
+    else if (this.records != null) this.records.messageShared(user, user.getSharedMessages().size() - 1, message);
+    else markDirty(user);
+  }
+
+  // Remember that this user changed, it will be written on the next flush
+  private void markDirty(User user) {
+    if (this.shards != null) this.shards.changed(user); // only his shard
+    else this.dirtyUsers.add(user.getUsername());
+  }
+
+  // Returns the number of users waiting to be written
+  public int getDirtyCount() {
+    return this.dirtyUsers.size();
+  }
+
+  // Returns the changes not persisted yet: users waiting to be written ("json"), records waiting for the group commit ("journal"), shards waiting to be written ("shards") or entries waiting for the sync ("records")
+  public int getBacklog() {
+    if (this.journal != null) return this.journal.getPendingCount();
+    if (this.shards != null) return this.shards.getDirtyCount();
+    if (this.records != null) return this.records.getPendingCount();
+    return getDirtyCount();
+  }
+
+  // Read the users from the JSON file and start flushing dirty users in background every "interval" milliseconds ("json" mode)
+  public synchronized void startFlusher(long interval) throws IOException {
+    if (this.flusher != null) return; // already started
+
+    refuseRecords();
+    refuseShards();
+    loadWithJournal(); // never start with an empty store, the first flush would wipe the file
+
+    this.flusher = newScheduler();
+    this.flusher.scheduleWithFixedDelay(() -> {
+      try {flush();}
+      catch (IOException | RuntimeException e) {e.printStackTrace();} // keep the users dirty, the next round will try again
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  // Replay the journal and start logging every change ("journal" mode)
+  public synchronized void startJournal(long commitInterval, long compactInterval) throws IOException {
+    if (this.flusher != null) return; // already started
+
+    refuseRecords();
+    refuseShards();
+    load(); // the last snapshot
+    this.journal = new UserJournal(this.registeredUsersJSON);
+    this.journal.replay(this.registeredUsersLIST); // apply the changes logged after the last snapshot
+    for (User user: this.registeredUsersLIST) this.registeredUsersMAP.putIfAbsent(user.getUsername(), user); // index the users registered in the journal
+    this.journal.open();
+    compact(); // fold the replayed changes into a fresh snapshot
+
+    this.flusher = newScheduler();
+    this.flusher.scheduleWithFixedDelay(() -> {
+      try {this.journal.commit();}
+      catch (IOException | RuntimeException e) {e.printStackTrace();} // the records stay pending, the next round will try again
+    }, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+
+    this.flusher.scheduleWithFixedDelay(() -> {
+      try {compact();}
+      catch (IOException | RuntimeException e) {e.printStackTrace();} // the old segments are kept, the next round will try again
+    }, compactInterval, compactInterval, TimeUnit.MILLISECONDS);
+  }
+
+  // Read the users from the shard files and start flushing the changed shards every "interval" milliseconds ("shards" mode)
+  public synchronized void startShards(int count, long interval) throws IOException {
+    if (this.flusher != null) return; // already started
+
+    refuseRecords();
+
+    int existing = ShardedUserPersistence.count(this.registeredUsersJSON); // shards of the files on disk, 0 if there are none
+    if (existing != 0 && existing != count) throw new IOException("the users are in " + existing + " shard files, not " + count + ": set shards=" + existing + ", or stop the server and run \"java ShardedUserPersistence merge " + existing + "\" and then \"java ShardedUserPersistence split " + count + "\"");
+
+    this.shards = new ShardedUserPersistence(this.registeredUsersJSON, count, this::lockFor);
+
+    if (existing != 0) {
+      // The shards are the authoritative copy, RegisteredUsers.json is only what was left before the split and is never read
+      this.registeredUsersLIST.addAll(this.shards.load());
+      for (User user: this.registeredUsersLIST) this.registeredUsersMAP.put(user.getUsername(), user);
+    }
+    else {
+      loadWithJournal(); // first start in "shards" mode: split the users read from RegisteredUsers.json
+      for (User user: this.registeredUsersLIST) this.shards.registered(user);
+    }
+
+    this.flusher = newScheduler();
+    this.flusher.scheduleWithFixedDelay(() -> {
+      try {flush();}
+      catch (IOException | RuntimeException e) {e.printStackTrace();} // keep the shards dirty, the next round will try again
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  // Read the users from the record files and start syncing them every "interval" milliseconds ("records" mode)
+  public synchronized void startRecords(long interval) throws IOException {
+    if (this.flusher != null) return; // already started
+
+    this.records = new UserRecordFile(this.registeredUsersJSON);
+
+    if (this.records.exists()) {
+      // The record files are the authoritative copy, RegisteredUsers.json is only what was left before the conversion
+      this.registeredUsersLIST.addAll(this.records.open());
+      for (User user: this.registeredUsersLIST) this.registeredUsersMAP.put(user.getUsername(), user);
+    }
+    else {
+      // First start in "records" mode: convert the users read from RegisteredUsers.json
+      refuseShards();
+      loadWithJournal();
+      this.records.open();
+      for (User user: this.registeredUsersLIST) this.records.imported(user);
+      this.records.sync();
+    }
+
+    this.flusher = newScheduler();
+    this.flusher.scheduleWithFixedDelay(() -> {
+      try {this.records.sync();}
+      catch (IOException | RuntimeException e) {e.printStackTrace();} // the entries and records stay pending, the next round will try again
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  // Refuse to start a mode that reads RegisteredUsers.json while the users are in the record files of the "records" mode, the users changed since the conversion would be lost
+  private void refuseRecords() throws IOException {
+    if (new UserRecordFile(this.registeredUsersJSON).exists()) throw new IOException("the users are in the record files of the \"records\" mode: set persistence=records, or stop the server and run \"java UserRecordFile export\"");
+  }
+
+  // Refuse to start a mode that reads RegisteredUsers.json while the users are in the shard files of the "shards" mode, RegisteredUsers.json is only what was left before the split
+  private void refuseShards() throws IOException {
+    int existing = ShardedUserPersistence.count(this.registeredUsersJSON);
+    if (existing != 0) throw new IOException("the users are in " + existing + " shard files of the \"shards\" mode: set persistence=shards and shards=" + existing + ", or stop the server and run \"java ShardedUserPersistence merge " + existing + "\"");
+  }
+
+  // Create the single background thread used to persist the users: its tasks catch RuntimeException too, a task that throws is never run again and persistence would stop silently
+  private static ScheduledExecutorService newScheduler() {
+    return Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "user-store-flusher");
+      thread.setDaemon(true); // don't keep the server alive only for this thread
+      return thread;
+    });
+  }
+
+  // Write the registered users to the JSON file if someone changed since the last flush ("json" mode), the shards of the changed users ("shards" mode) or sync the record files ("records" mode)
+  public void flush() throws IOException {
+    if (this.shards != null) {
+      this.shards.flush();
+      return;
+    }
+
+    if (this.records != null) {
+      this.records.sync();
+      return;
+    }
+
+    List<String> written;
+
+    synchronized (this) {
+      if (this.dirtyUsers.isEmpty()) return; // nothing to write
+
+      written = new ArrayList<>(this.dirtyUsers);
+      this.dirtyUsers.removeAll(written); // users changed from now on will be written by the next flush
+    }
+
+    try {writeSnapshot(snapshot());}
+    catch (IOException | RuntimeException e) {
+      this.dirtyUsers.addAll(written); // not written: keep them dirty, the next flush will try again
+      throw e;
+    }
+  }
+
+  // Serialize all the users, each one while holding its lock so it's never seen half updated
+  private String snapshot() {
+    List<User> users;
+    synchronized (this) {users = new ArrayList<>(this.registeredUsersLIST);} // copy the list, new users can be registered meanwhile
+
+    JsonArray array = new JsonArray();
+
+    for (User user: users) {
+      Lock lock = lockFor(user.getUsername());
+      lock.lock();
+
+      try {array.add(this.gson.toJsonTree(user));}
+      finally {lock.unlock();}
+    }
+
+    return this.gson.toJson(array);
+  }
+
+  // Fold the journal into a fresh snapshot ("journal" mode)
+  private void compact() throws IOException {
+    long closed = this.journal.rotate(); // the changes from now on go to a new segment
+
+    writeSnapshot(snapshot()); // the users already contain every change of the closed segments
+    this.journal.deleteUpTo(closed); // the closed segments are now in the snapshot
+  }
+
+  // Write to a temporary file and then replace the old one, so a crash never leaves a half written file. The file is forced before
+  // the rename and the directory after it: the journal segments deleted after a compaction must never be the only copy of a change
+  private void writeSnapshot(String json) throws IOException {
+    File tmp = new File(this.registeredUsersJSON.getPath() + ".tmp");
+
+    try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+      while (buffer.hasRemaining()) channel.write(buffer);
+      channel.force(true);
+    }
+
+    Files.move(tmp.toPath(), this.registeredUsersJSON.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    UserJournal.forceDirectory(this.registeredUsersJSON.getAbsoluteFile().getParentFile());
+  }
+
+  // Stop the background flusher and write everything still pending
+  public void close() {
+    synchronized (this) {
+      if (this.flusher != null) this.flusher.shutdown(); // stop the background flusher
+    }
+
+    try {
+      if (this.flusher != null) this.flusher.awaitTermination(5, TimeUnit.SECONDS); // wait for a running flush to end
+
+      if (this.journal != null) this.journal.close();
+      else if (this.records != null) this.records.close();
+      else flush();
+    }
+    catch (InterruptedException e) {Thread.currentThread().interrupt();}
+    catch (IOException e) {e.printStackTrace();}
+  }
+}
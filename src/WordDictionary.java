@@ -0,0 +1,255 @@
+// I/O imports
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Utility imports
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Dictionary of the 10-letter words. Every word is packed in a long, 5 bits per letter ('a' is 1, so no
+ * word is 0), and the codes are kept in an open-addressing hash table with linear probing, sized at
+ * least twice the number of words, next to the position of every code in the file (indexOf() maps a word
+ * to its index, like get() maps an index to its word). Membership is a few reads, without any allocation.
+ * The server maps the dictionary from a file built once from words.txt (see open()), so the words are
+ * never decoded into objects at startup and the codes live in the page cache instead of the heap:
+ *   [magic int][version int][words int][table capacity int][codes in file order: words longs][hash table: capacity longs]
+ *   [index of the code of every slot of the hash table: capacity ints]
+ * All little-endian, the order of the processors we run on, so reading a code needs no byte swap.
+ */
+public class WordDictionary {
+  public static final int WORD_LENGTH = 10; // length of every word
+
+  private static final int MAGIC = 0x57444943; // "WDIC"
+  private static final int VERSION = 2;
+  private static final int HEADER = 16; // bytes of the header
+
+  private final ByteBuffer words; // codes of the words, in file order
+  private final ByteBuffer table; // hash table of the codes, 0 is an empty slot
+  private final ByteBuffer indexes; // index of the code of every slot of the hash table
+  private final int size; // number of words
+  private final int mask; // table capacity - 1
+
+  private static volatile WordDictionary shared = null; // dictionary of words.txt in the working directory, see shared()
+
+  public WordDictionary(List<String> words) {
+    long[] codes = new long[words.size()];
+
+    for (int i=0; i<codes.length; i++) {
+      codes[i] = encode(words.get(i));
+      if (codes[i] == 0) throw new IllegalArgumentException("invalid word: " + words.get(i)); // only 10 lowercase letters
+    }
+
+    long[] table = table(codes, codes.length);
+    int[] indexes = indexes(table, codes, codes.length);
+
+    this.words = ByteBuffer.allocate(8 * codes.length).order(ByteOrder.LITTLE_ENDIAN);
+    this.words.asLongBuffer().put(codes);
+    this.table = ByteBuffer.allocate(8 * table.length).order(ByteOrder.LITTLE_ENDIAN);
+    this.table.asLongBuffer().put(table);
+    this.indexes = ByteBuffer.allocate(4 * indexes.length).order(ByteOrder.LITTLE_ENDIAN);
+    this.indexes.asIntBuffer().put(indexes);
+    this.size = codes.length;
+    this.mask = table.length - 1;
+  }
+
+  // Dictionary on the codes and the hash table of a mapped file
+  private WordDictionary(ByteBuffer file) throws IOException {
+    file.order(ByteOrder.LITTLE_ENDIAN);
+    if (file.getInt(0) != MAGIC || file.getInt(4) != VERSION) throw new IOException("not a dictionary file");
+
+    this.size = file.getInt(8);
+    int capacity = file.getInt(12);
+
+    this.words = file.slice(HEADER, 8 * this.size).order(ByteOrder.LITTLE_ENDIAN);
+    this.table = file.slice(HEADER + 8 * this.size, 8 * capacity).order(ByteOrder.LITTLE_ENDIAN);
+    this.indexes = file.slice(HEADER + 8 * (this.size + capacity), 4 * capacity).order(ByteOrder.LITTLE_ENDIAN);
+    this.mask = capacity - 1;
+  }
+
+  // Read the dictionary from a file with one word per line
+  public static WordDictionary load(Path path) throws IOException {
+    return new WordDictionary(Files.readAllLines(path));
+  }
+
+  // Map the dictionary file built from a file with one word per line ("words.txt" -> "words.dict"), building it first if it's missing or older
+  public static WordDictionary open(Path path) throws IOException {
+    Path dictionary = path.resolveSibling(path.getFileName().toString().replaceFirst("\\.txt$", "") + ".dict");
+
+    if (!Files.exists(dictionary) || Files.getLastModifiedTime(dictionary).compareTo(Files.getLastModifiedTime(path)) < 0) build(path, dictionary);
+
+    try {return map(dictionary);}
+    catch (IOException e) { // built by another version, build it again
+      build(path, dictionary);
+      return map(dictionary);
+    }
+  }
+
+  // Returns the dictionary of words.txt in the working directory, mapped the first time it's needed: the one of the server, where the played words of the users are indexes
+  public static WordDictionary shared() {
+    WordDictionary dictionary = shared;
+
+    if (dictionary == null) {
+      synchronized (WordDictionary.class) {
+        if (shared == null) {
+          try {shared = open(Paths.get("words.txt"));}
+          catch (IOException e) {throw new UncheckedIOException(e);}
+        }
+
+        dictionary = shared;
+      }
+    }
+
+    return dictionary;
+  }
+
+  // Map a dictionary file, the mapping stays valid after the channel is closed
+  public static WordDictionary map(Path dictionary) throws IOException {
+    try (FileChannel channel = FileChannel.open(dictionary, StandardOpenOption.READ)) {
+      return new WordDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  // Build the dictionary file of a file with one word per line, written to a temporary file and moved in place
+  public static void build(Path path, Path dictionary) throws IOException {
+    long[] codes = new long[1024];
+    int size = 0;
+
+    // Read and encode the words, without keeping the lines
+    try (BufferedReader reader = Files.newBufferedReader(path)) {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        long code = encode(line);
+        if (code == 0) throw new IOException("invalid word: " + line); // only 10 lowercase letters
+
+        if (size == codes.length) codes = Arrays.copyOf(codes, size * 2);
+        codes[size++] = code;
+      }
+    }
+
+    long[] table = table(codes, size);
+    int[] indexes = indexes(table, codes, size);
+    Path temp = dictionary.resolveSibling(dictionary.getFileName() + ".tmp");
+
+    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + 8L * (size + table.length) + 4L * indexes.length);
+      file.order(ByteOrder.LITTLE_ENDIAN);
+
+      file.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(table.length);
+      file.asLongBuffer().put(codes, 0, size).put(table);
+      file.position(HEADER + 8 * (size + table.length));
+      file.asIntBuffer().put(indexes);
+      file.force();
+    }
+
+    Files.move(temp, dictionary, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  // Returns true if the word is in the dictionary
+  public boolean contains(String word) {
+    long code = encode(word);
+    if (code == 0) return false; // not a 10 lowercase letters word
+
+    for (int slot = slot(code, this.mask); ; slot = (slot + 1) & this.mask) {
+      long entry = this.table.getLong(slot << 3);
+
+      if (entry == code) return true;
+      if (entry == 0) return false;
+    }
+  }
+
+  // Returns the position of the word (file order), -1 if it isn't in the dictionary
+  public int indexOf(String word) {
+    long code = encode(word);
+    if (code == 0) return -1; // not a 10 lowercase letters word
+
+    for (int slot = slot(code, this.mask); ; slot = (slot + 1) & this.mask) {
+      long entry = this.table.getLong(slot << 3);
+
+      if (entry == code) return this.indexes.getInt(slot << 2);
+      if (entry == 0) return -1;
+    }
+  }
+
+  // Returns the word in position "index" (file order)
+  public String get(int index) {
+    return decode(this.words.getLong(index << 3));
+  }
+
+  // Returns the number of words
+  public int size() {
+    return this.size;
+  }
+
+  // Pack a word in a long, returns 0 if it isn't made of 10 lowercase letters
+  static long encode(String word) {
+    if (word == null || word.length() != WORD_LENGTH) return 0;
+
+    long code = 0;
+    for (int i=0; i<WORD_LENGTH; i++) {
+      char c = word.charAt(i);
+      if (c < 'a' || c > 'z') return 0;
+
+      code = (code << 5) | (c - 'a' + 1);
+    }
+
+    return code;
+  }
+
+  // Unpack a word from its code
+  static String decode(long code) {
+    char[] word = new char[WORD_LENGTH];
+    for (int i=WORD_LENGTH - 1; i>=0; i--) {
+      word[i] = (char) ('a' + (code & 31) - 1);
+      code >>>= 5;
+    }
+
+    return new String(word);
+  }
+
+  // Build the hash table of the first "size" codes
+  private static long[] table(long[] codes, int size) {
+    int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1; // power of 2, at least twice the words
+    long[] table = new long[capacity];
+    int mask = capacity - 1;
+
+    // Insert every code in the first empty slot
+    for (int i=0; i<size; i++) {
+      int slot = slot(codes[i], mask);
+      while (table[slot] != 0 && table[slot] != codes[i]) slot = (slot + 1) & mask;
+      table[slot] = codes[i];
+    }
+
+    return table;
+  }
+
+  // Returns the index in "codes" of the code of every slot of a hash table, -1 for the empty slots (the first one of a repeated word)
+  private static int[] indexes(long[] table, long[] codes, int size) {
+    int[] indexes = new int[table.length];
+    Arrays.fill(indexes, -1);
+    int mask = table.length - 1;
+
+    for (int i=0; i<size; i++) {
+      int slot = slot(codes[i], mask);
+      while (table[slot] != codes[i]) slot = (slot + 1) & mask;
+      if (indexes[slot] == -1) indexes[slot] = i;
+    }
+
+    return indexes;
+  }
+
+  // Returns the first slot of a code in a hash table
+  private static int slot(long code, int mask) {
+    long hash = code * 0x9E3779B97F4A7C15L; // spread the bits (Fibonacci hashing)
+    return (int) (hash >>> 32) & mask;
+  }
+}
@@ -0,0 +1,51 @@
+// Utility imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Aggregate statistics of all the games played on one secret word: the players whose play request was
+ * accepted, the games solved, the games failed and how many tries the solved games took (1..12).
+ * Every SecretWordEpoch has its own, so a rotation resets them with the same atomic write that publishes the
+ * new word, and a game keeps counting on the word it was accepted for. The counters are LongAdders: the games
+ * that end together add to different cells instead of retrying on the same one, and nothing takes a lock.
+ * The started games that are neither solved nor failed are still in progress, or were stopped by the rotation.
+ */
+public class WordStatistics {
+  private final LongAdder started = new LongAdder(); // play requests accepted
+  private final LongAdder solved = new LongAdder(); // games won
+  private final LongAdder failed = new LongAdder(); // games lost
+  private final LongAdder[] guessDistribution = new LongAdder[User.MAX_TRIES]; // games won in 1..12 tries
+
+  public WordStatistics() {
+    for (int i=0; i<this.guessDistribution.length; i++) this.guessDistribution[i] = new LongAdder();
+  }
+
+  // A player was accepted to play the word
+  public void started() {
+    this.started.increment();
+  }
+
+  // A player guessed the word in "tries" tries
+  public void solved(int tries) {
+    this.solved.increment();
+    this.guessDistribution[tries - 1].increment();
+  }
+
+  // A player didn't guess the word
+  public void failed() {
+    this.failed.increment();
+  }
+
+  // Returns started, solved and failed games followed by the guess distribution, read while the games keep ending (every counter is exact, not the whole list at one instant)
+  public List<Integer> snapshot() {
+    List<Integer> statistics = new ArrayList<>();
+    statistics.add(this.started.intValue());
+    statistics.add(this.solved.intValue());
+    statistics.add(this.failed.intValue());
+
+    for (LongAdder count: this.guessDistribution) statistics.add(count.intValue());
+
+    return statistics;
+  }
+}
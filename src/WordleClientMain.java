@@ -15,8 +15,9 @@ import java.net.Socket;
 // Utility imports
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 import java.util.Scanner;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 
 public class WordleClientMain {
   private static final String ANSI_RESET = "\u001B[0m"; // color reset
@@ -30,18 +31,25 @@ public class WordleClientMain {
       int port = Integer.parseInt(configReader.readLine()); // read the port from the configuration file
       String multicastHostname = configReader.readLine(); // read the multicast address from the configuration file
 
+      Properties options = new Properties(); // optional settings, one "key=value" per line after the first three lines
+      options.load(configReader);
+      boolean binary = options.getProperty("protocol", "text").equals("binary"); // "binary" to use the BinaryProtocol, otherwise the text protocol
+      int notifications = Integer.parseInt(options.getProperty("notifications", "100")); // how many of the last notifications are kept
+      if (notifications < 1) throw new IllegalArgumentException("notifications must be at least 1, not " + notifications); // the ring of the MulticastHandler can't be empty
+
       InetAddress multicastAddr = InetAddress.getByName(multicastHostname); // multicast group address
       InetSocketAddress multicastGroup = new InetSocketAddress(multicastAddr, port); // multicast group 
       NetworkInterface netIF = NetworkInterface.getByName("bge0"); // network interface
     
       MulticastSocket multicastClient = new MulticastSocket(port); // create a multicast client socket
 
-      MulticastHandler multicastHandler = new MulticastHandler(multicastClient); // create a multicast notification handler
+      MulticastHandler multicastHandler = new MulticastHandler(multicastClient, notifications); // create a multicast notification handler, keeping the last notifications
       Thread multicastHandlerThread = new Thread(multicastHandler); // create a multicast notification handler thread
 
       Socket client = new Socket(hostname, port); // create a new client socket
       BufferedReader sockIn = new BufferedReader(new InputStreamReader(client.getInputStream())); // create a new BufferedReader to read from the socket
       PrintWriter sockOut = new PrintWriter(client.getOutputStream(), true); // create a new PrintWriter to write on the socket output
+      BinaryClient binaryClient = binary ? new BinaryClient(client) : null; // requests of the binary protocol, if chosen
       
       Scanner sc = new Scanner(System.in); // scanner for command line 
 
@@ -65,13 +73,15 @@ public class WordleClientMain {
         System.out.println("(5) Statistics");
         System.out.println("(6) Share");
         System.out.println("(7) Show me sharing");
+        System.out.println("(8) Leaderboard");
+        System.out.println("(9) Secret word statistics");
         
         try {
           int action = Integer.parseInt(sc.nextLine()); // read the user's action
 
-          // If action not in range 1-8
-          if (action < 1 || action > 7) {
-            System.out.println("Your action number must be in 1-7 range... Try again!\n");
+          // If action not in range 1-9
+          if (action < 1 || action > 9) {
+            System.out.println("Your action number must be in 1-9 range... Try again!\n");
             continue;
           }
   
@@ -89,10 +99,19 @@ public class WordleClientMain {
     
             System.out.print("Password: ");
             String password = sc.nextLine(); // read the password from command line
+
+            if (username.length() > User.MAX_USERNAME) {
+              System.out.println("ERROR: username mustn't be longer than " + User.MAX_USERNAME + " characters!\n");
+              continue;
+            }
             
-            int result = register(username, password, client, sockIn, sockOut); // get the result of the registration
+            int result = binary ? binaryClient.register(username, password) : register(username, password, client, sockIn, sockOut); // get the result of the registration
   
             if (result == -1) System.out.println("ERROR: password mustn't be empty!\n");
+
+            if (result == -2) System.out.println("ERROR: username mustn't be longer than " + User.MAX_USERNAME + " characters!\n");
+
+            if (result == -3) System.out.println("ERROR: username mustn't contain control characters!\n");
   
             if (result == 0) System.out.println("ERROR: this username is already in use! Try logging in...\n");
   
@@ -117,8 +136,13 @@ public class WordleClientMain {
     
             System.out.print("Password: ");
             String password = sc.nextLine(); // read the password from command line
+
+            if (username.length() > User.MAX_USERNAME) { // no such user, and the binary request would be too long
+              System.out.println("ERROR: incorrect username or password!\n");
+              continue;
+            }
     
-            int result = login(username, password, client, sockIn, sockOut); // read the result of the log in
+            int result = binary ? binaryClient.login(username, password) : login(username, password, client, sockIn, sockOut); // read the result of the log in
   
             if (result == -1) System.out.println("ERROR: incorrect username or password!\n");
   
@@ -129,7 +153,7 @@ public class WordleClientMain {
               loggedIN = true; // set loggedIN to true
               registered = true; // set registered to true
 
-              currentUser = new User(username, password, new ArrayList<>(), new ConcurrentHashMap<Integer, Integer>(), new ArrayList<>(), new ArrayList<>()); // initialize a new current user
+              currentUser = new User(username, password); // initialize a new current user
 
               multicastHandlerThread.start(); // start multicast notification thread
               multicastClient.joinGroup(multicastGroup, netIF); // join multicast group
@@ -148,7 +172,7 @@ public class WordleClientMain {
             
             // If the user pressed enter log out him
             if (answer.trim().isEmpty() || answer == null) { 
-              int result = logout(currentUser.getUsername(), currentUser.getPassword(), client, sockIn, sockOut); // read the result of the log out
+              int result = binary ? binaryClient.logout(currentUser.getUsername(), currentUser.getPassword()) : logout(currentUser.getUsername(), currentUser.getPassword(), client, sockIn, sockOut); // read the result of the log out
   
               if (result == -1) System.out.println("ERROR: there is no user logged in with this username and password, or you're already logged out!\n");
   
@@ -170,14 +194,23 @@ public class WordleClientMain {
               continue;
             }
   
-            int result = playWordle(currentUser.getUsername(), currentUser.getPassword(), client, sockIn, sockOut); // read the result of the check for play
+            int result; // result of the check for play
+
+            if (binary) {
+              CompletableFuture<Integer> play = binaryClient.playWordleAsync(currentUser.getUsername(), currentUser.getPassword());
+              CompletableFuture<Integer> start = binaryClient.startGameAsync(); // sent without waiting for the play response, the server refuses it if the play request is refused
+
+              result = BinaryClient.await(play);
+              BinaryClient.await(start);
+            }
+            else result = playWordle(currentUser.getUsername(), currentUser.getPassword(), client, sockIn, sockOut); // read the result of the check for play
   
             if (result == -1) System.out.println("ERROR: you've already played for this word! Please wait...\n");
   
             if (result == 1) {
               System.out.println("\nWELCOME TO WORDLE!");
 
-              sockOut.println("5"); // send the request type to the server
+              if (!binary) sockOut.println("5"); // send the request type to the server, the binary game is already started
   
               // Until it runs out of tries
               while (tries < 12) {
@@ -195,7 +228,7 @@ public class WordleClientMain {
                   continue;
                 }
                 
-                int response = sendWord(client, sockIn, sockOut, guessedWord); // read the result of sending word
+                int response = binary ? binaryClient.sendWord(guessedWord) : sendWord(client, sockIn, sockOut, guessedWord); // read the result of sending word
                 
                 // If the word has changed
                 if (response == 0) {
@@ -209,7 +242,7 @@ public class WordleClientMain {
                 if (response == -1) System.out.println("ERROR: this word is not in words list!\n");
                 
                 if (response == 1) {
-                  String hintWord = sockIn.readLine(); // read the hint word from server
+                  String hintWord = binary ? binaryClient.getHintWord() : sockIn.readLine(); // read the hint word from server
     
                   colorWord(guessedWord, hintWord); // color the letters
                   
@@ -247,7 +280,7 @@ public class WordleClientMain {
             }
             
             // Get statistics list from the server
-            List<Integer> statistics = sendMeStatistics(currentUser.getUsername(), currentUser.getPassword(), client, sockIn, sockOut);
+            List<Integer> statistics = binary ? binaryClient.sendMeStatistics(currentUser.getUsername(), currentUser.getPassword()) : sendMeStatistics(currentUser.getUsername(), currentUser.getPassword(), client, sockIn, sockOut);
             int games = statistics.get(0);
             int wins = statistics.get(1);
             int currentStreak = statistics.get(2);
@@ -269,7 +302,8 @@ public class WordleClientMain {
               continue;
             }
 
-            share(sockOut); // share the result of the game on the multicast group
+            if (binary) binaryClient.share(); // share the result of the game on the multicast group
+            else share(sockOut);
           }
           
           // Show sharing
@@ -281,6 +315,62 @@ public class WordleClientMain {
             
             multicastHandler.showNotifications(); // Print all the notification received
           }
+
+          // Leaderboard
+          if (action == 8) {
+            if (!loggedIN) {
+              System.out.println("You must be logged in!\n");
+              continue;
+            }
+
+            // Get the best users and the user's rank in every index from the server
+            List<Leaderboard.Ranking> rankings = binary ? binaryClient.leaderboard(currentUser.getUsername(), currentUser.getPassword()) : leaderboard(currentUser.getUsername(), currentUser.getPassword(), client, sockIn, sockOut);
+
+            for (int index=0; index<rankings.size(); index++) {
+              Leaderboard.Ranking ranking = rankings.get(index);
+
+              System.out.println("\n" + Leaderboard.INDEXES[index].toUpperCase() + "\n");
+              for (Leaderboard.Entry entry: ranking.getTop()) System.out.println(entry.getRank() + ". " + entry.getUsername() + "   " + Leaderboard.format(index, entry.getValue()));
+
+              if (ranking.getUser().getRank() == 0) System.out.println("\nYou're not ranked yet, play some more games!");
+              else System.out.println("\nYour rank: " + ranking.getUser().getRank() + "   " + Leaderboard.format(index, ranking.getUser().getValue()));
+            }
+
+            System.out.println();
+          }
+
+          // Secret word statistics
+          if (action == 9) {
+            System.out.print("Secret word number (empty for the current one): ");
+            String line = sc.nextLine().trim(); // read the number from command line
+            int number;
+
+            try {number = line.isEmpty() ? 0 : Integer.parseInt(line);}
+            catch (NumberFormatException e) {
+              System.out.println("The number of the secret word must be a number... Try again!\n");
+              continue;
+            }
+
+            // Get the statistics of all the players of the secret word from the server
+            List<Integer> statistics = binary ? binaryClient.wordStatistics(number) : wordStatistics(number, client, sockIn, sockOut);
+
+            if (statistics.isEmpty()) {
+              System.out.println("There are no statistics of this secret word!\n");
+              continue;
+            }
+
+            int started = statistics.get(1);
+            int solved = statistics.get(2);
+            int failed = statistics.get(3);
+
+            System.out.println("\nWORDLE " + statistics.get(0) + "\n");
+            System.out.println("Players: " + started + "   Solved: " + solved + "   Failed: " + failed + "   Unfinished: " + (started - solved - failed) + "\n");
+
+            System.out.println("GUESS DISTRIBUTION\n");
+            for (int i=4; i<16; i++) System.out.println("Attempt " + (i-3) + ": " + statistics.get(i));
+
+            System.out.println();
+          }
         }
         catch (NumberFormatException e) {
           System.out.println("Your action must be a number... Try again!\n");
@@ -299,7 +389,7 @@ public class WordleClientMain {
   }
 
   // Registration request
-  private static int register(String username, String password, Socket client, BufferedReader sockIn, PrintWriter sockOut) throws IOException {
+  static int register(String username, String password, Socket client, BufferedReader sockIn, PrintWriter sockOut) throws IOException {
     sockOut.println("1"); // send the request type to the server
     sockOut.println(username); // send username 
     sockOut.println(password); // send password 
@@ -310,7 +400,7 @@ public class WordleClientMain {
   }
 
   // Login request
-  private static int login(String username, String password, Socket client, BufferedReader sockIn, PrintWriter sockOut) throws IOException {
+  static int login(String username, String password, Socket client, BufferedReader sockIn, PrintWriter sockOut) throws IOException {
     sockOut.println("2"); // send the request type to the server
     sockOut.println(username); // send username 
     sockOut.println(password); // send password 
@@ -321,7 +411,7 @@ public class WordleClientMain {
   }
 
   // Logout request
-  private static int logout(String username, String password, Socket client, BufferedReader sockIn, PrintWriter sockOut) throws IOException {
+  static int logout(String username, String password, Socket client, BufferedReader sockIn, PrintWriter sockOut) throws IOException {
     sockOut.println("3"); // send the request type to the server
     sockOut.println(username); // send username 
     sockOut.println(password); // send password 
@@ -332,7 +422,7 @@ public class WordleClientMain {
   }
 
   // Play request
-  private static int playWordle(String username, String password, Socket client, BufferedReader sockIn, PrintWriter sockOut) throws IOException {
+  static int playWordle(String username, String password, Socket client, BufferedReader sockIn, PrintWriter sockOut) throws IOException {
     sockOut.println("4"); // send the request type to the server
     sockOut.println(username); // send username 
     sockOut.println(password); // send password 
@@ -343,7 +433,7 @@ public class WordleClientMain {
   }
 
   // Send word request
-  private static int sendWord(Socket client, BufferedReader sockIn, PrintWriter sockOut, String guessedWord) throws IOException {
+  static int sendWord(Socket client, BufferedReader sockIn, PrintWriter sockOut, String guessedWord) throws IOException {
     sockOut.println(guessedWord); // send guessed word
 
     int result = Integer.parseInt(sockIn.readLine()); // read the result of the guess from the server
@@ -352,7 +442,7 @@ public class WordleClientMain {
   }
 
   // Get statistics request
-  private static List<Integer> sendMeStatistics(String username, String password, Socket client, BufferedReader sockIn, PrintWriter sockOut) throws IOException {
+  static List<Integer> sendMeStatistics(String username, String password, Socket client, BufferedReader sockIn, PrintWriter sockOut) throws IOException {
     sockOut.println("6"); // send the request type to the server
     sockOut.println(username); // send username 
     sockOut.println(password); // send password 
@@ -398,8 +488,46 @@ public class WordleClientMain {
     return statistics;
   }
 
+  // Word statistics request, "number" 0 for the current secret word: an empty list if the word is unknown
+  static List<Integer> wordStatistics(int number, Socket client, BufferedReader sockIn, PrintWriter sockOut) throws IOException {
+    sockOut.println("10"); // send the request type to the server
+    sockOut.println(number); // send the secret word number
+
+    List<Integer> statistics = new ArrayList<>();
+    if (!sockIn.readLine().equals("1")) return statistics; // "-1" if the server has no statistics of this word
+
+    for (int i=0; i<4 + User.MAX_TRIES; i++) statistics.add(Integer.parseInt(sockIn.readLine())); // number, started, solved and failed games, guess distribution
+
+    return statistics;
+  }
+
+  // Leaderboard request, an empty list if the user isn't logged in
+  static List<Leaderboard.Ranking> leaderboard(String username, String password, Socket client, BufferedReader sockIn, PrintWriter sockOut) throws IOException {
+    sockOut.println("9"); // send the request type to the server
+    sockOut.println(username); // send username 
+    sockOut.println(password); // send password 
+
+    List<Leaderboard.Ranking> rankings = new ArrayList<>();
+    if (!sockIn.readLine().equals("1")) return rankings; // "-1" if the user isn't logged in
+
+    // For every index read the user's rank, value and number of entries, then the entries
+    for (int index=0; index<Leaderboard.INDEXES.length; index++) {
+      String[] user = sockIn.readLine().split(" ");
+      List<Leaderboard.Entry> top = new ArrayList<>();
+
+      for (int entries = Integer.parseInt(user[2]); entries > 0; entries--) {
+        String[] entry = sockIn.readLine().split(" ", 3); // the username can contain spaces
+        top.add(new Leaderboard.Entry(Integer.parseInt(entry[0]), entry[2], Integer.parseInt(entry[1])));
+      }
+
+      rankings.add(new Leaderboard.Ranking(top, new Leaderboard.Entry(Integer.parseInt(user[0]), username, Integer.parseInt(user[1]))));
+    }
+
+    return rankings;
+  }
+
   // Share request
-  private static void share(PrintWriter sockOut) throws IOException {
+  static void share(PrintWriter sockOut) throws IOException {
     sockOut.println("7"); // send the request type to the server
   }
 
@@ -1,13 +1,21 @@
 // I/O imports
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 // Connection imports
@@ -15,35 +23,38 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
 import java.net.NetworkInterface;
+import java.net.ProtocolException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.SocketException;
-import java.net.DatagramPacket;
 
 // Utility imports
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Properties;
 import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
-// GSON imports
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 
 public class WordleServerMain {
   private static final File registeredUsersJSON = new File("RegisteredUsers.json"); // file JSON conteining registered users
-  private static List<User> registeredUsersLIST = new ArrayList<>(); // list of registered users
+  private static final Path gameMetadataFile = Paths.get("GameMetadata.dat"); // number, index and rotation time of the current secret word
+  private static final UserStore userStore = new UserStore(registeredUsersJSON); // in-memory store of registered users, read and persisted in background by the mode chosen in main()
+  private static List<User> registeredUsersLIST = userStore.getUsers(); // list of registered users
+
+  private static final ConcurrentHashMap<String, User> loggedUsersMAP = new ConcurrentHashMap<>(); // logged users indexed by username
 
-  private static List<User> loggedUsersLIST = new ArrayList<>(); // list of logged users
+  static final ServerMetrics metrics = new ServerMetrics(); // counters, latencies and gauges of the server
+  private static Leaderboard leaderboard = new Leaderboard(5); // rankings of the registered users, built again at startup with the configured threshold
 
-  private static String secretWord = null; // secret word
-  private static int secretWordNumber = getSecretWordNumber(); // secret word number
+  private static final AtomicReference<SecretWordEpoch> epoch = new AtomicReference<>(new SecretWordEpoch("", 0)); // current secret word, its number and hint tables, replaced as a whole at every rotation
+  private static final int WORD_ARCHIVE = 1000; // previous secret words whose statistics are kept
+  private static final ConcurrentSkipListMap<Integer, WordStatistics> wordArchive = new ConcurrentSkipListMap<>(); // statistics of the previous secret words, by number
 
   public static void main(String[] args) throws IOException {
     BufferedReader configReader = new BufferedReader(new InputStreamReader(new FileInputStream("ServerConfig.txt"))); // server configuration file reader
@@ -52,660 +63,432 @@ public class WordleServerMain {
     String multicastHostname = configReader.readLine(); // read the multicast address from the configuration file
     int time = Integer.parseInt(configReader.readLine()); // read the timer from the configuration file
 
-    List<String> words = Files.readAllLines(Paths.get("words.txt")); // get a list of words from words.txt
-    
-    secretWord = words.get(new Random().nextInt(words.size())); // get a random secret word from the words.txt file
-    ++secretWordNumber;
-    
-    Timer timer = new Timer(); // create a new timer
+    Properties options = new Properties(); // optional "key=value" settings after the first 3 lines
+    options.load(configReader);
+    String persistence = options.getProperty("persistence", "json"); // how the users are persisted: "json", "journal", "shards" or "records"
+
+    // Start persisting changed users in background
+    if (persistence.equals("journal")) {
+      long commitInterval = Long.parseLong(options.getProperty("journalCommitInterval", "10")); // how often the journal is written and synced
+      long compactInterval = Long.parseLong(options.getProperty("journalCompactInterval", "60000")); // how often the journal is folded into RegisteredUsers.json
+      userStore.startJournal(commitInterval, compactInterval);
+    }
+    else if (persistence.equals("shards")) {
+      int shards = Integer.parseInt(options.getProperty("shards", "16")); // number of shard files
+      long flushInterval = Long.parseLong(options.getProperty("flushInterval", "1000")); // how often the shards of dirty users are written
+      userStore.startShards(shards, flushInterval);
+    }
+    else if (persistence.equals("records")) {
+      long syncInterval = Long.parseLong(options.getProperty("recordsSyncInterval", "1000")); // how often the record files are written and synced
+      userStore.startRecords(syncInterval);
+    }
+    else {
+      long flushInterval = Long.parseLong(options.getProperty("flushInterval", "1000")); // how often dirty users are written to the JSON file
+      userStore.startFlusher(flushInterval);
+    }
+
+    Runtime.getRuntime().addShutdownHook(new Thread(userStore::close)); // write pending users when the server is stopped
+
+    int minGames = Integer.parseInt(options.getProperty("leaderboardMinGames", "5")); // games needed to be ranked by win rate and average tries
+    leaderboard = new Leaderboard(minGames, registeredUsersLIST); // rank the users read from the files, then every finished game moves its user
+
+    WordDictionary words = WordDictionary.shared(); // map the dictionary of words, built from words.txt the first time (or already mapped to read the played words of the users)
+    Random random = new Random();
+
+    GameMetadata metadata = null; // the last rotation, saved by the previous run
+    try {metadata = GameMetadata.read(gameMetadataFile);}
+    catch (IOException e) {e.printStackTrace();} // search the number in the shared messages, like the first time
+
+    int number = metadata != null ? metadata.getNumber() : getSecretWordNumber(registeredUsersLIST); // the last secret word number, searched in the shared messages only if there is no metadata yet
+    long elapsed = metadata != null ? System.currentTimeMillis() - metadata.getRotatedAt() : time; // time since the last rotation
+    long delay = time; // time until the next rotation
+
+    if (elapsed >= 0 && elapsed < time && metadata.getWordIndex() < words.size()) {
+      epoch.set(new SecretWordEpoch(words.get(metadata.getWordIndex()), number, metadata.getRotatedAt())); // restarted before the next rotation, the secret word doesn't change
+      delay = time - elapsed;
+    }
+    else {
+      epoch.set(new SecretWordEpoch("", number)); // no secret word yet, only the last secret word number
+      rotate(words, random.nextInt(words.size())); // get a random secret word from the words.txt file
+    }
+
+    ScheduledExecutorService rotation = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "secret-word-rotation");
+      thread.setDaemon(true); // don't keep the server alive only for this thread
+      return thread;
+    });
 
     // Choose a random word every 5 minutes (300000 ms)
-    timer.scheduleAtFixedRate(new TimerTask() {
-      public void run() {
-        secretWord = words.get(new Random().nextInt(words.size())); // get a random secret word from the words.txt file
-        ++secretWordNumber;
-      }
-    }, time, time);
+    rotation.scheduleAtFixedRate(() -> rotate(words, random.nextInt(words.size())), delay, time, TimeUnit.MILLISECONDS);
+
+    String serverMode = options.getProperty("serverMode", "threads"); // how clients are served: "threads" (one thread per client), "virtual" (one virtual thread per client) or "nio" (a few event loops)
+    int nioThreads = Integer.parseInt(options.getProperty("nioThreads", "" + Runtime.getRuntime().availableProcessors())); // number of event loops in "nio" mode
+    long shareWindow = Long.parseLong(options.getProperty("shareWindow", "10")); // how long a shared result waits for others to be sent in the same datagram, in ms
+    int adminPort = Integer.parseInt(options.getProperty("adminPort", "0")); // local port serving the metrics snapshot, 0 for none
+    long metricsInterval = Long.parseLong(options.getProperty("metricsInterval", "0")); // how often the metrics snapshot is written to ServerMetrics.txt, in ms, 0 for never
+
+    // Gauges read at every metrics snapshot
+    metrics.gauge("logged_users", loggedUsersMAP::size);
+    metrics.gauge("persistence_backlog", userStore::getBacklog);
+    metrics.gauge("secret_word_number", () -> epoch.get().getNumber());
+    metrics.gauge("secret_word_age_ms", () -> System.currentTimeMillis() - epoch.get().getRotatedAt());
+    metrics.gauge("leaderboard_ranked_users", () -> leaderboard.size(Leaderboard.MAX_STREAK));
+
+    ServerSocket admin = adminPort != 0 ? metrics.startAdmin(adminPort) : null;
+    ScheduledExecutorService exporter = metricsInterval > 0 ? metrics.startExport(Paths.get("ServerMetrics.txt"), metricsInterval) : null;
 
     InetAddress multicastAddr = InetAddress.getByName(multicastHostname); // multicast group address
     InetSocketAddress multicastGroup = new InetSocketAddress(multicastAddr, port); // multicast group 
     NetworkInterface netIF = NetworkInterface.getByName("bge0"); // network interface
 
-    try (MulticastSocket multicastServer = new MulticastSocket(port)) { // try to create a multicast server socket
-      try (ServerSocket server = new ServerSocket(port)) { // try to create a server socket and connect to it
-        try (ExecutorService pool = Executors.newCachedThreadPool()) { // try to create a thread pool 
-          multicastServer.setReuseAddress(true); // set reuse address for multicast server
-          multicastServer.joinGroup(multicastGroup, netIF); // join the multicast group
-
-          while (true) {
-            try {pool.execute(new Accepter(server.accept(), multicastServer, words, multicastAddr, port));} // create a new Accepter that wait until client's connection   
-            catch (IOException e) {break;} 
-          } 
-
-          timer.cancel(); // delete the timer
-          configReader.close(); // close the scanner
-          pool.shutdown(); // shut down the thread pool
-          multicastServer.leaveGroup(multicastGroup, netIF); // leave the multicast group
+    try (MulticastSocket multicastServer = new MulticastSocket(port); DatagramChannel multicastChannel = DatagramChannel.open(); SharePublisher sharePublisher = new SharePublisher(multicastChannel, multicastGroup, shareWindow)) { // try to create a multicast server socket, and a channel and a publisher thread to send the notifications
+      multicastServer.setReuseAddress(true); // set reuse address for multicast server
+      multicastServer.joinGroup(multicastGroup, netIF); // join the multicast group
+
+      if (serverMode.equals("nio")) {
+        // Serve all the clients with a few non-blocking event loops, until the server socket is closed
+        try (NioServer server = new NioServer(port, nioThreads, () -> new WordleSession(sharePublisher, words))) {server.run();}
+      }
+      else {
+        try (ServerSocket server = new ServerSocket(port, 1024)) { // try to create a server socket and connect to it, with a large backlog for many clients connecting at once
+          try (ExecutorService pool = serverMode.equals("virtual") ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newCachedThreadPool()) { // try to create a thread pool, or a virtual thread for each client
+            while (true) {
+              try {pool.execute(new Accepter(server.accept(), new WordleSession(sharePublisher, words)));} // create a new Accepter that wait until client's connection   
+              catch (IOException e) {break;} 
+            } 
+
+            pool.shutdown(); // shut down the thread pool
+          }
         }
       }
+
+      rotation.shutdownNow(); // stop choosing secret words
+      if (admin != null) admin.close(); // stop serving the metrics
+      if (exporter != null) exporter.shutdownNow();
+      configReader.close(); // close the scanner
+      userStore.close(); // write pending users to the JSON file
+      multicastServer.leaveGroup(multicastGroup, netIF); // leave the multicast group
     }
     catch (IOException e) {e.printStackTrace();}
   }
 
-  private static class Accepter implements Runnable {
+  static class Accepter implements Runnable {
     private Socket client;
-    private MulticastSocket multicastServer;
-    private List<String> words;
-    private InetAddress multicastAddr;
-    private int port;
+    private WordleSession session;
     
-    public Accepter(Socket client, MulticastSocket multicastServer, List<String> words, InetAddress multicastAddr, int port) {
+    public Accepter(Socket client, WordleSession session) {
       this.client = client; 
-      this.multicastServer = multicastServer;
-      this.words = words;
-      this.multicastAddr = multicastAddr;
-      this.port = port;
+      this.session = session;
     }
 
     public void run() {
-      User currentUser = null; // current user
-
-      boolean loggedIN = false; // if the current user is logged in
-
       try {
-        BufferedReader sockIn = new BufferedReader(new InputStreamReader(this.client.getInputStream())); // try to create a new BufferedReader to read from the socket
-        PrintWriter sockOut = new PrintWriter(this.client.getOutputStream(), true); // try to create a new PrintWriter to write on the socket output
-
-        // Initialize statistics variables
-        Integer games = 0, wins = 0, currentStreak = 0, maxStreak = 0;
-        String numberOfTries = null; // number of tries for specific secret word and user
-
-        while (true) {
-          String requestType = sockIn.readLine(); // read request type from the client
-
-          if (requestType != null) { // Ignore null reading from the socket
-            // If user want to regiser
-            if (requestType.equals("1")) {
-              String username = sockIn.readLine(); // read the username from the client
-              String password = sockIn.readLine(); // read the password from the client
-
-              if (password.trim().isEmpty() || password == null) {
-                sockOut.println("-1"); // if the password is empty
-                continue;
-              }
-
-              int checkUser = checkUser(username, password); // check if the user is already registered
-  
-              if (checkUser == 1) sockOut.println("1"); // if the user isn't already registered 
-  
-              if (checkUser == 0) sockOut.println("0"); // if the user is already registered
-            }
-            
-            // If user want to login
-            if (requestType.equals("2")) {
-              String username = sockIn.readLine(); // read the username from the client
-              String password = sockIn.readLine(); // read the password from the client
-
-              int login = logger(username, password); // check for successful login
-
-              if (login == 1) {
-                sockOut.println("1"); // if successful login
-                
-                currentUser = getCurrentUser(username, password); // get the current user
-
-                loggedIN = true;
-              }
-  
-              if (login == 0) sockOut.println("0"); // if the user is already logged in
-
-              if (login == -1) sockOut.println("-1"); // if the password is incorrect
-            }
-            
-            // If user want to logout
-            if (requestType.equals("3")) {
-              String username = sockIn.readLine(); // read the username from the client
-              String password = sockIn.readLine(); // read the password from the client
-
-              int logout = outLogger(username, password); // check for successful logout
-
-              if (logout == 1) {
-                sockOut.println("1"); // if successful logout
-                break;
-              }
-  
-              if (logout == -1) sockOut.println("-1"); // if there is no user logged in with this username and password or the user is already logged out
-            }
-            
-            // If user want to play Wordle
-            if (requestType.equals("4")) {
-              String username = sockIn.readLine(); // read the username from the client
-              String password = sockIn.readLine(); // read the password from the client
-
-              int play = checkPlay(username, password); // check if the user is already playing
-
-              if (play == 1) {
-                sockOut.println("1"); // if the user never played for this word
-
-                currentUser = getCurrentUser(username, password); // get the current user
-              }
-
-              if (play == -1) sockOut.println("-1"); // if the user played for this word
-            }
-            
-            // If user want to send a word
-            if (requestType.equals("5")) {
-              List<String> playedWords = currentUser.getPlayedWords(); // get the current user's played words
-              int tries = 0;
-              boolean loose = false;
-
-              while (tries < 12) {
-                // If the  secret word has changed
-                if ((playedWords.size() != 0) && (playedWords.get(playedWords.size() - 1) != secretWord)) {
-                  sockOut.println("0"); // if the secret word has changed send "0"
-                  tries = -1; // set tries to "-1" to as a special character to identify that the word has changed
-
-                  playedWords.remove(playedWords.size() - 1); // remove the last played word
-                  currentUser.setPlayedWords(playedWords); // set the new played words list to the logged in user
-                  updateJSON(currentUser); // update the JSON file
-
-                  break;
-                }
-                
-
-                String guessedWord = sockIn.readLine(); // read the guessed word from the client
-                
-                // If the  secret word has changed
-                if ((playedWords.size() != 0) && (playedWords.get(playedWords.size() - 1) != secretWord)) {
-                  sockOut.println("0"); // if the secret word has changed send "0"
-                  tries = -1; // set tries to "-1" to as a special character to identify that the word has changed
-
-                  playedWords.remove(playedWords.size() - 1); // remove the last played word
-                  currentUser.setPlayedWords(playedWords); // set the new played words list to the logged in user
-                  updateJSON(currentUser); // update the JSON file
-                  
-                  break;
-                }
-
-                if (!this.words.contains(guessedWord)) {
-                  sockOut.println("-1"); // if the guessed word is not in the word list
-                  continue;
-                }
-
-                if (this.words.contains(guessedWord)) sockOut.println("1"); // if the guessed word is in the word list
-                
-                String hintWord = getHints(guessedWord); // get hints for the guessed word
-                
-                sockOut.println(hintWord); // send the guessed word with hint
-
-                if (hintWord.equals("!!!!!!!!!!")) break; // if the user guess the secret word
-
-                tries++;
-              }
-
-              // If the user loose
-              if (tries == 12) {
-                numberOfTries = "X";
-
-                List<Integer> statistics = currentUser.getStatistics(); // get current user's statistics
-
-                // Update statistics
-                Integer  oldGames = statistics.get(0);
-                games = ++oldGames;
-                Integer oldWins = statistics.get(1);
-                wins = oldWins;
-                currentStreak = 0;
-                Integer oldMaxStreak = statistics.get(3);
-                maxStreak = oldMaxStreak;
-
-                // Set new statistics to the current user
-                currentUser.setStatistics(games, wins, currentStreak, maxStreak);
-                updateJSON(currentUser); // update JSON file
-
-                loose = true; // if the user loose
-              }
-
-              // If user guess the secret word
-              if (!loose && tries != -1) {
-                numberOfTries = ("" + ++tries + "").trim();
-                List<Integer> statistics = currentUser.getStatistics(); // get current user's statistics
-
-                // Update statistics
-                Integer  oldGames = statistics.get(0);
-                games = ++oldGames;
-                Integer oldWins = statistics.get(1);
-                wins = ++oldWins;
-                Integer oldCurrentStreak = statistics.get(2);
-                currentStreak = ++oldCurrentStreak;
-                Integer oldMaxStreak = statistics.get(3);
-                maxStreak = ++oldMaxStreak;
-
-                ConcurrentHashMap<Integer, Integer> guessDistribution = currentUser.getGuessDistribution(); // get current user's guess distribution
-
-                // Update guess distribution
-                int oldVal = guessDistribution.get(tries); // get old value of this character from the HashMap
-                guessDistribution.replace(tries, ++oldVal); // then replace it with incremented value
-
-                // Set new statistics to the current user
-                currentUser.setStatistics(games, wins, currentStreak, maxStreak);
-                currentUser.setGuessDistribution(guessDistribution);
-                updateJSON(currentUser); // update JSON file
-              }
-            }
-            
-            // If user wants his statistics 
-            if (requestType.equals("6")) {
-              String username = sockIn.readLine(); // read the username from the client
-              String password = sockIn.readLine(); // read the password from the client
-
-              // Get statistics list
-              List<Integer> statistics = getStatistics(username, password);
-              games = statistics.get(0);
-              wins = statistics.get(1);
-              currentStreak = statistics.get(2);
-              maxStreak = statistics.get(3);
-
-              // Set new statistics to the current user
-              currentUser.setStatistics(games, wins, currentStreak, maxStreak);
-
-              // Send statistics to the client
-              sockOut.println(games); 
-              sockOut.println(wins);
-              sockOut.println(currentStreak);
-              sockOut.println(maxStreak);
-
-              ConcurrentHashMap<Integer, Integer> guessDistribution = currentUser.getGuessDistribution(); // get the guess distribution of this user
-
-              for (int i=1; i<13; i++) sockOut.println(guessDistribution.get(i)); // send guess distribution to the user
-            }
-            
-            // If user want to share his game's results
-            if (requestType.equals("7")) {
-              String sharingMessage = currentUser.getUsername() + ": Wordle " + secretWordNumber + " " + numberOfTries + "/12"; // result of the game (UDP message)
-
-              List<String> sharedMessages = currentUser.getSharedMessages(); // get the shared messages of the current user
-              sharedMessages.add(sharingMessage.split(":")[1].trim()); // add this new shared message
-              currentUser.setSharedMessages(sharedMessages); // set the new shared messages list
-              updateJSON(currentUser); // update JSON file
-              
-              DatagramPacket response = new DatagramPacket(sharingMessage.getBytes(), sharingMessage.length()); // create response packet
-              response.setAddress(this.multicastAddr); // set response address to multicast address
-              response.setPort(this.port); // set response port to multicast port
-              this.multicastServer.send(response); // send the sharing message to multicast group
-            }
-          }          
+        BufferedInputStream in = new BufferedInputStream(this.client.getInputStream()); // input stream of the socket, the first byte chooses the protocol
+        in.mark(1);
+
+        if (in.read() == BinaryProtocol.MAGIC) runBinary(in); // the client asked for the binary protocol
+        else {
+          in.reset(); // the first byte is part of the first text line
+          runText(in);
         }
-        
-        sockIn.close(); // close the input stream of the server
-        sockOut.close(); // close the output stream of the server
       }
-      catch (SocketException e) {
-        if (loggedIN) try {outLogger(currentUser.getUsername(), currentUser.getPassword());} catch (IOException ioe) {e.printStackTrace();}
-      }
-      catch (IOException e) {}
+      catch (IOException | UncheckedIOException e) {metrics.connectionError();} // the connection broke, or the client doesn't speak our protocol
+      finally {
+        try {this.session.close();} // log out the user if the client went away without logging out
+        catch (IOException e) {e.printStackTrace();}
 
+        try {this.client.close();} // close the connection with the client
+        catch (IOException e) {}
+      }
     }
-  }
 
-  // Check if user is already registered or not, then decide whether to register the user or not
-  private static synchronized int checkUser(String username, String password) throws IOException { 
-    Gson gson = new GsonBuilder().setPrettyPrinting().create(); // create a new GsonBuilder
+    // Serve a client of the text protocol
+    private void runText(InputStream in) throws IOException {
+      BufferedReader sockIn = new BufferedReader(new InputStreamReader(in)); // try to create a new BufferedReader to read from the socket
+      PrintWriter sockOut = new PrintWriter(new BufferedWriter(new OutputStreamWriter(this.client.getOutputStream()))); // try to create a new PrintWriter to write on the socket output, flushed when every line received is handled
 
-    // Create an empty list of statistics for this user
-    List<Integer> statistics = new ArrayList<>();
-    statistics.add(0);
-    statistics.add(0);
-    statistics.add(0);
-    statistics.add(0);
+      while (true) {
+        String line = sockIn.readLine(); // read the next line from the client
 
-    // Create an empty HashMap of guess distribution statistics for this user
-    ConcurrentHashMap<Integer, Integer> guessDistribution = new ConcurrentHashMap<Integer, Integer>();
-    for (int i=1; i<13; i++) guessDistribution.putIfAbsent(i, 0); // initialize the guess distribution HashMap
+        if (line == null) break; // the client closed the connection
 
-    User user = new User(username, password, statistics, guessDistribution, new ArrayList<>(), new ArrayList<>()); //  create a new User
-    
-    // If the file containing all registered users is empty, then register the user
-    if (registeredUsersJSON.length() == 0) {
-      registeredUsersLIST.add(user); // add the user to the registered users list
-      try (FileWriter writer = new FileWriter(registeredUsersJSON)) {gson.toJson(registeredUsersLIST, writer);} // update the "RegisteredUsers.json" file with the new user
-      return 1; // return "1" for successful registration
+        boolean open = this.session.onLine(line, sockOut::println);
+        if (!sockIn.ready()) sockOut.flush(); // send all the responses in one segment once the pipelined requests are handled, a second small write would wait for the client's delayed ACK
+
+        if (!open) break; // the user logged out
+      }
+
+      sockOut.flush();
     }
 
-    try (FileReader reader = new FileReader(registeredUsersJSON)) {registeredUsersLIST = gson.fromJson(reader, new TypeToken<List<User>>() {}.getType());} // read the "RegisteredUsers.json" file and save all the registered users into the registered users list 
+    // Serve a client of the binary protocol
+    private void runBinary(InputStream in) throws IOException {
+      DataInputStream sockIn = new DataInputStream(in);
+      BufferedOutputStream sockOut = new BufferedOutputStream(this.client.getOutputStream());
+
+      sockOut.write(BinaryProtocol.MAGIC); // confirm the binary protocol to the client, sent with the first response
+
+      while (true) {
+        int length;
+
+        try {length = sockIn.readUnsignedShort();} // read the length of the next frame
+        catch (EOFException e) {break;} // the client closed the connection
+
+        if (length == 0 || length > BinaryProtocol.MAX_FRAME) throw new ProtocolException("frame length " + length); // not a client of ours
 
-    // For each registered user check if the user is already registered
-    for (User u: registeredUsersLIST) { 
-      String userName = u.getUsername();
+        byte[] frame = new byte[length];
+        sockIn.readFully(frame);
 
-      if (username.equals(userName)) return 0; // return "0" for already registered user
+        boolean open = this.session.onFrame(ByteBuffer.wrap(frame), response -> {
+          try {sockOut.write(response);}
+          catch (IOException e) {throw new UncheckedIOException(e);}
+        });
+        if (sockIn.available() == 0) sockOut.flush(); // send all the responses in one segment once the pipelined requests are handled
+
+        if (!open) break; // the user logged out
+      }
+
+      sockOut.flush();
     }
+  }
 
-    registeredUsersLIST.add(user); // add the user to the registered users list
-    try (FileWriter writer = new FileWriter(registeredUsersJSON)) {gson.toJson(registeredUsersLIST, writer);} // update the "RegisteredUsers.json" file with the new user
+  // Check if user is already registered or not, then decide whether to register the user or not
+  static int checkUser(String username, String password) throws IOException { 
+    User user = new User(username, password); //  create a new User with empty statistics
+
+    if (!userStore.add(user)) return 0; // return "0" for already registered user, otherwise the user is registered and will be written to the JSON file in background
 
     return 1; // return "1" for successful registration
   }
 
   // Check if user is already logged in, then decide whether to log in the user or not
-  private static synchronized int logger(String username, String password) throws IOException {
-    Gson gson = new GsonBuilder().setPrettyPrinting().create(); // create a new GsonBuilder
-
-    // If the file containing all logged in users is empty
-    if (loggedUsersLIST.size() == 0) {
-      if (registeredUsersJSON.length() == 0) return -1; // return "-1" if no one is registered or logged with this username and password
+  static int logger(String username, String password) throws IOException {
+    Lock lock = userStore.lockFor(username); // lock only this user
+    lock.lock();
 
-      try (FileReader reader = new FileReader(registeredUsersJSON)) {registeredUsersLIST = gson.fromJson(reader, new TypeToken<List<User>>() {}.getType());} // read the "RegisteredUsers.json" file and save all the registered users into the registered users list  
+    try {
+      User loggedUser = loggedUsersMAP.get(username); // search the user among the logged in users
 
-      // For each registred user check if the username and password of the logged in user match
-      for (User registeredUser: registeredUsersLIST) { 
-        String userName = registeredUser.getUsername(); 
+      if (loggedUser != null && loggedUser.getPassword().equals(password)) return 0; // return "0" for already logged in user
 
-        if (username.equals(userName)) {
-          String passWord = registeredUser.getPassword();
+      User registeredUser = userStore.get(username); // search the user among the registered users
 
-          if (passWord.equals(password)) {
-            loggedUsersLIST.add(registeredUser); // add the user to the logged users list
-            return 1; // return "1" for successful log in
-          }
-        } 
+      if (registeredUser != null && registeredUser.getPassword().equals(password)) {
+        loggedUsersMAP.put(username, registeredUser); // add the user to the logged users
+        return 1; // return "1" for successful log in
       }
 
       return -1; // return "-1" for unsuccesful log in
     }
-
-    try (FileReader reader = new FileReader(registeredUsersJSON)) {registeredUsersLIST = gson.fromJson(reader, new TypeToken<List<User>>() {}.getType());} // read the "RegisteredUsers.json" file and save all the registered users into the registered users list    
-
-    // For each logged in user check if the user is already logged in
-    for (User loggedUser: loggedUsersLIST) { 
-      String userName = loggedUser.getUsername();
-      
-      if (username.equals(userName)) {
-        String passWord = loggedUser.getPassword();
-        
-        if (passWord.equals(password)) return 0; // return "0" for already logged in user
-      } 
-    }
-    
-    // For each registered user check if the username and password of the logged in user match
-    for (User registeredUser: registeredUsersLIST) { 
-      String userName = registeredUser.getUsername();
-
-      if (username.equals(userName)) {
-        String passWord = registeredUser.getPassword();
-
-        if (passWord.equals(password)) {
-          loggedUsersLIST.add(registeredUser); // add the user to the logged users list
-          return 1; // return "1" for successful log in
-        }
-      } 
-    }
-
-    return -1; // return "-1" for unsuccesful log in
+    finally {lock.unlock();}
   }
 
   // Check if user is already logged out, then decide whether to log out the user or not
-  private static synchronized int outLogger(String username, String password) throws IOException {
-    if (loggedUsersLIST.size() == 0) return -1; // return "-1" for unsuccesful log out beacause the user may have already logged out or not logged in yet
+  static int outLogger(String username, String password) throws IOException {
+    Lock lock = userStore.lockFor(username); // lock only this user
+    lock.lock();
 
-    // For each logged in user check if the username and password of the logged in user match
-    for (User loggedUser: loggedUsersLIST) { 
-      String userName = loggedUser.getUsername();
+    try {
+      User loggedUser = loggedUsersMAP.get(username); // search the user among the logged in users
 
-      if (username.equals(userName)) {
-        String passWord = loggedUser.getPassword();
+      // If the username and password of the logged in user match
+      if (loggedUser != null && loggedUser.getPassword().equals(password)) {
+        loggedUsersMAP.remove(username); // remove the user from the logged users
+        return 1; // return "1" for successful log out
+      }
 
-        if (passWord.equals(password)) {
-          loggedUsersLIST.remove(loggedUser); // remove the user from the logged users list
-          return 1; // return "1" for successful log out
-        }
-      } 
+      return -1; // return "-1" for unsuccesful log out beacause the user may have already logged out or not logged in yet
     }
-
-    return -1; // return "-1" for unsuccesful log out
+    finally {lock.unlock();}
   }
 
-  // Returns the user statistics
-  private static synchronized List<Integer> getStatistics(String username, String password) throws IOException {
+  // Returns the user statistics followed by the guess distribution
+  static List<Integer> getStatistics(String username, String password) throws IOException {
     List<Integer> statistics = new ArrayList<>(); // create a new empty List of statistics
 
-    // For each logged in user check if the username and password of the logged in user match
-    for (User loggedUser: loggedUsersLIST) { 
-      String userName = loggedUser.getUsername();
+    User loggedUser = loggedUsersMAP.get(username); // search the user among the logged in users
 
-      if (username.equals(userName)) {
-        String passWord = loggedUser.getPassword();
+    if (loggedUser == null || !loggedUser.getPassword().equals(password)) return statistics; // return an empty List of statistics
 
-        if (passWord.equals(password)) {
-          statistics = loggedUser.getStatistics(); // get user statistics
-        }
-      }
+    Lock lock = userStore.lockFor(username); // lock only this user, so statistics and guess distribution are read together
+    lock.lock();
+
+    try {
+      // Get user statistics
+      statistics.add(loggedUser.getGames());
+      statistics.add(loggedUser.getWins());
+      statistics.add(loggedUser.getCurrentStreak());
+      statistics.add(loggedUser.getMaxStreak());
+
+      for (int tries=1; tries<=User.MAX_TRIES; tries++) statistics.add(loggedUser.getGuessCount(tries)); // get user guess distribution
     }
+    finally {lock.unlock();}
 
     return statistics; // return user statistics
   }
 
-  // Check if user already played for current secret word, then decide to let him play or not
-  private static synchronized int checkPlay(String username, String password) throws IOException {
-    List<String> playedWordsL = new ArrayList<>(); // create a new empty List of registered user played words
-    List<String> playedWordsR = new ArrayList<>(); // create a new empty List of logged user played words
-
-    User logUser = null; // create a new logged user
-    User regUser = null; // create a new registered user
+  // Returns the best users of every leaderboard index and the position of the user in it
+  static List<Leaderboard.Ranking> getLeaderboard(String username, String password) throws IOException {
+    List<Leaderboard.Ranking> rankings = new ArrayList<>(); // create a new empty List of rankings
 
-    Gson gson = new GsonBuilder().setPrettyPrinting().create(); // create a new GsonBuilder
+    User loggedUser = loggedUsersMAP.get(username); // search the user among the logged in users
 
-    try (FileReader reader = new FileReader(registeredUsersJSON)) {registeredUsersLIST = gson.fromJson(reader, new TypeToken<List<User>>() {}.getType());} // read the "RegisteredUsers.json" file and save all the registered users into the registered users list
+    if (loggedUser == null || !loggedUser.getPassword().equals(password)) return rankings; // return an empty List of rankings
 
-    // For each registered user check if the username and password of the registered user match
-    for (User registeredUser: registeredUsersLIST) { 
-      String userName = registeredUser.getUsername();
+    Lock lock = userStore.lockFor(username); // lock only this user, so his scores are read together
+    lock.lock();
 
-      if (username.equals(userName)) {
-        String passWord = registeredUser.getPassword();
-
-        if (passWord.equals(password)) {
-          playedWordsR = registeredUser.getPlayedWords(); // get user's played words list
-          regUser = new User(registeredUser.getUsername(), registeredUser.getPassword(), registeredUser.getStatistics(), registeredUser.getGuessDistribution(), playedWordsR, new ArrayList<>()); // set the new registered user to this user with the played words list
-        }
-      }
-    } 
+    try {
+      for (int index=0; index<Leaderboard.INDEXES.length; index++) rankings.add(leaderboard.ranking(index, loggedUser, Leaderboard.TOP));
+    }
+    finally {lock.unlock();}
 
-    // For each logged in user check if the username and password of the logged in user match
-    for (User loggedUser: loggedUsersLIST) { 
-      String userName = loggedUser.getUsername();
+    return rankings; // return the rankings
+  }
 
-      if (username.equals(userName)) {
-        String passWord = loggedUser.getPassword();
+  // Returns the current secret word, read it only once per operation: it can be replaced at any time
+  static SecretWordEpoch currentEpoch() {
+    return epoch.get();
+  }
 
-        if (passWord.equals(password)) {
-          playedWordsL = loggedUser.getPlayedWords(); // get user's played words list
-          logUser = new User(loggedUser.getUsername(), loggedUser.getPassword(), loggedUser.getStatistics(), loggedUser.getGuessDistribution(), playedWordsL, new ArrayList<>()); // set the new logged in user to this user with the played words list
-        }
-      }
-    } 
+  // Make the word in position "index" of the dictionary the secret word, saving the rotation first so a restart never reuses its number
+  static void rotate(WordDictionary words, int index) {
+    int number = epoch.get().getNumber() + 1;
+    long now = System.currentTimeMillis();
 
-    // Check if user already played for current secret word
-    for (String word: playedWordsL) {
-      if (word.equals(secretWord)) return -1; // return "-1"
-    }
+    try {new GameMetadata(number, index, now).write(gameMetadataFile);}
+    catch (IOException e) {e.printStackTrace();} // the next rotation saves it again
 
-    playedWordsL.add(secretWord); // add the current secret word to the registered user played words list
-    playedWordsR.add(secretWord); // add the current secret word to the logged in user played words list
-    logUser.setPlayedWords(playedWordsL); // set the new played words list to the logged in user
-    regUser.setPlayedWords(playedWordsR); // set the new played words list to the registered user
+    archive(epoch.getAndSet(new SecretWordEpoch(words.get(index), number, now))); // only the rotation thread writes, no update is lost
+  }
 
-    try (FileWriter writer = new FileWriter(registeredUsersJSON)) {gson.toJson(registeredUsersLIST, writer);} // update the "RegisteredUsers.json" file without the user
+  // Keep the statistics of a replaced secret word: the counters themselves, so the games still ending on it are counted too
+  private static void archive(SecretWordEpoch old) {
+    if (old.getWord().isEmpty()) return; // no secret word yet
 
-    return 1; //  return "1" to start the game play
+    wordArchive.put(old.getNumber(), old.getStatistics());
+    wordArchive.headMap(old.getNumber() - WORD_ARCHIVE, true).clear(); // drop the oldest words
   }
 
-  // Update all JSON files
-  private static synchronized void updateJSON(User user) throws IOException {
-    Gson gson = new GsonBuilder().setPrettyPrinting().create(); // create a new GsonBuilder
-
-    String username = user.getUsername(); // get username of the user
-    String password = user.getPassword(); // get password of the user
+  // Returns the number of a secret word followed by the statistics of all the games played on it (see WordStatistics), "number" 0 for the current word; an empty list if the word is unknown
+  static List<Integer> getWordStatistics(int number) {
+    List<Integer> wordStatistics = new ArrayList<>(); // create a new empty List of statistics
 
-    try (FileReader reader = new FileReader(registeredUsersJSON)) {registeredUsersLIST = gson.fromJson(reader, new TypeToken<List<User>>() {}.getType());} // read the "RegisteredUsers.json" file and save all the registered users into the registered users list
+    SecretWordEpoch current = epoch.get(); // read the secret word only once, it can change at any time
+    if (number == 0) number = current.getNumber();
 
-    int posR = 0; // search the correct position to replace the new user
+    WordStatistics statistics = number == current.getNumber() ? (current.getWord().isEmpty() ? null : current.getStatistics()) : wordArchive.get(number);
 
-    // For each registered user check if the username and password of the registered user match
-    for (User registeredUser: registeredUsersLIST) { 
-      String userName = registeredUser.getUsername();
+    if (statistics == null) return wordStatistics; // return an empty List of statistics
 
-      if (username.equals(userName)) {
-        String passWord = registeredUser.getPassword();
+    wordStatistics.add(number);
+    wordStatistics.addAll(statistics.snapshot());
 
-        if (passWord.equals(password)) {
-          registeredUsersLIST.set(posR, user); // replace the old user with the new one
-        }
-      }
+    return wordStatistics;
+  }
 
-      posR++;
-    } 
+  // Check if user already played for the secret word of "epoch", then decide to let him play or not
+  static int checkPlay(String username, String password, SecretWordEpoch epoch) throws IOException {
+    User logUser = loggedUsersMAP.get(username); // logged in user, the same object kept by the store of registered users
 
-    int posL = 0; // search the correct position to replace the new user
+    if (logUser == null || !logUser.getPassword().equals(password)) return -1; // return "-1" if the user isn't logged in
 
-    // For each logged in user check if the username and password of the logged in user match
-    for (User loggedUser: loggedUsersLIST) { 
-      String userName = loggedUser.getUsername();
+    Lock lock = userStore.lockFor(username); // lock only this user
+    lock.lock();
 
-      if (username.equals(userName)) {
-        String passWord = loggedUser.getPassword();
+    try {
+      String word = epoch.getWord();
+      int index = WordDictionary.shared().indexOf(word); // position of the secret word in the dictionary
 
-        if (passWord.equals(password)) {
-          loggedUsersLIST.set(posL, user); // replace the old user with the new one
-        }
-      }
+      // Check if user already played for current secret word, otherwise add it to the user played words
+      if (index < 0 || !logUser.getPlayedWords().add(index)) return -1; // return "-1", also if there is no secret word yet
 
-      posL++;
+      userStore.playedWordAdded(logUser, word); // persist the change in background
     }
+    finally {lock.unlock();}
 
-    try (FileWriter writer = new FileWriter(registeredUsersJSON)) {gson.toJson(registeredUsersLIST, writer);} // update the "RegisteredUsers.json" file with the new user
+    return 1; //  return "1" to start the game play
   }
 
-  // Returns current user
-  private static synchronized User getCurrentUser(String username, String password) throws IOException {
-    Gson gson = new GsonBuilder().setPrettyPrinting().create(); // create a new GsonBuilder
-
-    User currentUser = null; // create a new user
-
-    // If the file containing all logged in users is empty
-    if (loggedUsersLIST.size() == 0) {
-      try (FileReader reader = new FileReader(registeredUsersJSON)) {registeredUsersLIST = gson.fromJson(reader, new TypeToken<List<User>>() {}.getType());}  // read the "RegisteredUsers.json" file and save all the registered users into the registered users list
-
-      // For each registered user check if the username and password of the registered user match
-      for (User registeredUser: registeredUsersLIST) { 
-        String userName = registeredUser.getUsername();
-  
-        if (username.equals(userName)) {
-          String passWord = registeredUser.getPassword();
-  
-          if (passWord.equals(password)) {
-            currentUser = registeredUser; // assign this registered user to the current user 
-          }
-        }
-      } 
-
-      return currentUser; // return the current user
-    }
-
-    // For each logged in user check if the username and password of the logged in user match
-    for (User loggedUser: loggedUsersLIST) { 
-      String userName = loggedUser.getUsername();
-
-      if (username.equals(userName)) {
-        String passWord = loggedUser.getPassword();
+  // Remove the played word of a user whose game stopped because the secret word changed
+  static void cancelGame(User user, String word) {
+    Lock lock = userStore.lockFor(user.getUsername()); // lock only this user
+    lock.lock();
 
-        if (passWord.equals(password)) {
-          currentUser = loggedUser; // assign this logged in user to the current user 
-        }
+    try {
+      // Remove the played word of the stopped game
+      if (user.getPlayedWords().remove(WordDictionary.shared().indexOf(word))) {
+        userStore.playedWordRemoved(user, word); // persist the change in background
       }
     }
-
-    return currentUser; // return the current user
+    finally {lock.unlock();}
   }
 
-  // Search for the correct secret word number
-  private static int getSecretWordNumber() {
-    if (registeredUsersJSON.length() == 0) return 0; // if it's the first time the server starts
-
-    Gson gson = new GsonBuilder().setPrettyPrinting().create(); // create a new GsonBuilder
-
-    try (FileReader reader = new FileReader(registeredUsersJSON)) {registeredUsersLIST = gson.fromJson(reader, new TypeToken<List<User>>() {}.getType());}  // read the "RegisteredUsers.json" file and save all the registered users into the registered users list
-    catch (IOException e) {}
-
-    List<List<String>> listOfLists = new ArrayList<>(); // create a new empty List 
-    List<String> flattenedList = new ArrayList<>(); // create a new empty List 
-    List<String> sharedMessages = new ArrayList<>(); // create a new empty List 
+  // Update the statistics of a user who didn't guess the secret word
+  static void updateLoss(User user) {
+    Lock lock = userStore.lockFor(user.getUsername()); // lock only this user
+    lock.lock();
 
-    // For each registered user 
-    for (User registeredUser: registeredUsersLIST) { 
-      listOfLists.add(registeredUser.getSharedMessages()); // add to the list of lists each registered user's shared messages list
+    try {
+      int[] scores = leaderboard.scores(user); // the user's place in the leaderboard before the change
+      user.addLoss(); // one more game, the streak is over
+      leaderboard.update(user, scores);
+      userStore.statisticsUpdated(user); // persist the change in background
     }
+    finally {lock.unlock();}
+  }
 
-    for (List<String> list: listOfLists) {
-      flattenedList.addAll(list); // flatten the list, addAll() appends all of the elements in each list to the end of "flattenedList"
-    }
+  // Update the statistics and the guess distribution of a user who guessed the secret word in "tries" tries
+  static void updateWin(User user, int tries) {
+    Lock lock = userStore.lockFor(user.getUsername()); // lock only this user
+    lock.lock();
 
-    for (String sharedMessage: flattenedList) {
-      sharedMessages.add(sharedMessage.split(" ")[1].trim()); // for each shared message get only the number of the secret word  
+    try {
+      int[] scores = leaderboard.scores(user); // the user's place in the leaderboard before the change
+      user.addWin(tries); // one more game, win and streak, and one more game won in "tries" tries
+      leaderboard.update(user, scores);
+      userStore.statisticsUpdated(user); // persist the change in background
     }
+    finally {lock.unlock();}
+  }
 
-    Collections.sort(sharedMessages); // sort the shared messages list
+  // Add a shared message to a user
+  static void addSharedMessage(User user, String sharedMessage) {
+    Lock lock = userStore.lockFor(user.getUsername()); // lock only this user
+    lock.lock();
 
-    return sharedMessages.size() == 0 ? 0 : Integer.parseInt(sharedMessages.get(sharedMessages.size() - 1)); // if no one shared some messages return "0" otherwhise the last element of the sorted list (greatest secret word number)
+    try {
+      user.getSharedMessages().add(sharedMessage); // add this new shared message
+      userStore.messageShared(user, sharedMessage); // persist the change in background
+    }
+    finally {lock.unlock();}
   }
 
-  // Returns the guessed word crypted with hints for the user
-  private static synchronized String getHints(String guessedWord) {
-    String hintWord = ""; // create a new empty string
-    char[] match = new char[guessedWord.length()]; // matching characters array
-
-    // Create a ConcurrentHashMap to save each secret word's character occurrences 
-    ConcurrentHashMap<String, Integer> occurrencesS = new ConcurrentHashMap<>();
+  // Returns current user
+  static User getCurrentUser(String username, String password) throws IOException {
+    User currentUser = loggedUsersMAP.get(username); // search the user among the logged in users
 
-    for (int i=0; i<secretWord.length(); i++) occurrencesS.putIfAbsent(String.valueOf(secretWord.charAt(i)), 0); // initialize the secret word's occurrences HashMap
+    if (currentUser == null) currentUser = userStore.get(username); // otherwise search the user among the registered users
 
-    // Count all occurrences
-    for (int i=0; i<secretWord.length(); i++) {
-      int oldVal = occurrencesS.get(String.valueOf(secretWord.charAt(i))); // get old value of this character from the HashMap
-      occurrencesS.replace(String.valueOf(secretWord.charAt(i)), ++oldVal); // then replace it with incremented value
-    }
+    if (currentUser != null && currentUser.getPassword().equals(password)) return currentUser; // return the current user
 
-    // Create a ConcurrentHashMap to save each guessed word's character occurrences 
-    ConcurrentHashMap<String, Integer> occurrencesG = new ConcurrentHashMap<>();
-
-    for (int i=0; i<guessedWord.length(); i++) occurrencesG.putIfAbsent(String.valueOf(guessedWord.charAt(i)), 0); // initialize the guessed word's occurrences HashMap
+    return null; // no user with this username and password
+  }
 
-    // Search for matching characters
-    for (int i=0; i<secretWord.length(); i++) {
-      if (secretWord.charAt(i) == guessedWord.charAt(i)) {
-        match[i] = guessedWord.charAt(i); // add the matching charater in the correct place
-        int oldVal = occurrencesG.get(String.valueOf(guessedWord.charAt(i))); // get old value of this character from the HashMap
-        occurrencesG.replace(String.valueOf(guessedWord.charAt(i)), ++oldVal); // then replace it with incremented value
-      } 
-    }
+  // Search for the last secret word number in the shared messages ("Wordle <number> <tries>/12"), only when there is no game metadata yet
+  static int getSecretWordNumber(List<User> users) {
+    int number = 0; // if no one shared some messages
 
-    // Create the hint word
-    for (int i=0; i<secretWord.length(); i++) {
-      // Increase the value of the occurrences only if this isn't a matched character
-      if (guessedWord.charAt(i) != (match[i])) {
-        int oldVal = occurrencesG.get(String.valueOf(guessedWord.charAt(i))); // get old value of this character from the HashMap
-        occurrencesG.replace(String.valueOf(guessedWord.charAt(i)), ++oldVal); // then replace it with incremented value
-      }
-      
-      if (secretWord.charAt(i) == guessedWord.charAt(i)) hintWord += '!'; // if the character is in the correct place then replace it with "!"
+    for (User user: users) {
+      for (String sharedMessage: user.getSharedMessages()) {
+        String[] fields = sharedMessage.split(" ");
 
-      if ((secretWord.indexOf(guessedWord.charAt(i)) != -1) && (secretWord.charAt(i) != guessedWord.charAt(i))) {
-        // If I have encountered this character fewer times than there are occurrences in the secret word
-        if (occurrencesG.get(String.valueOf(guessedWord.charAt(i))) <= occurrencesS.get(String.valueOf(guessedWord.charAt(i)))) hintWord += '?'; // if the character is not in the correct place but it's in the secret word then replace it with "?"
-        else hintWord += '-'; // if the character isn't in the secret word then replace it with "-"
+        try {number = Math.max(number, Integer.parseInt(fields[1].trim()));} // compare the numbers, as strings "10" would come before "9"
+        catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {} // not a message of ours
       }
-
-      if (secretWord.indexOf(guessedWord.charAt(i)) == -1) hintWord += '-'; // if the character isn't in the secret word then replace it with "-"
     }
 
-    return hintWord; // return the hint word
+    return number;
   }
+
 }
\ No newline at end of file
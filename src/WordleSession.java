@@ -0,0 +1,400 @@
+// I/O imports
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+// Connection imports
+import java.net.ProtocolException;
+
+// Utility imports
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+ * State of the conversation with one client, independent of how bytes are read and written: the blocking
+ * Accepter and the NIO front-end both feed it one line at a time (text protocol) or one frame at a time
+ * (BinaryProtocol), and both protocols are decoded into the same operations.
+ * A text request is a type line ("1".."7", "9" for the leaderboard or "10" for the statistics of a secret word: 8 is
+ * the guess frame of the BinaryProtocol) followed, for "1", "2", "3", "4", "6" and "9", by username and password,
+ * for "10" by the number of the secret word.
+ * After "5" every line is a guessed word, until the game ends.
+ * The game is bound to the SecretWordEpoch its play request was accepted for: every guess reads the current
+ * epoch once, and if it's another one the game is stopped, so the hints of a game all come from the same word.
+ */
+public class WordleSession {
+  private final SharePublisher sharePublisher; // sends the notifications to the multicast group from its own thread
+  private final WordDictionary words;
+  private final HintEngine hints = new HintEngine(); // hint engine of this session
+
+  private User currentUser = null; // current user
+  private boolean loggedIN = false; // if the current user is logged in
+  private String numberOfTries = null; // number of tries for specific secret word and user
+  private int gameNumber = 0; // secret word number of the last finished game
+
+  private String requestType = null; // type of the request waiting for username and password
+  private String username = null; // username of the request waiting for the password
+  private boolean wordNumber = false; // if the line received is the secret word number of a word statistics request
+  private boolean playing = false; // if the lines received are guessed words
+  private int tries = 0; // number of tries of the current game
+  private char[] hintWord = null; // hint word of the last valid guess
+  private SecretWordEpoch gameEpoch = null; // secret word of the accepted play request, until its game ends
+  private boolean closed = false; // if the client went away
+
+  public WordleSession(SharePublisher sharePublisher, WordDictionary words) {
+    this.sharePublisher = sharePublisher;
+    this.words = words;
+
+    WordleServerMain.metrics.sessionOpened();
+  }
+
+  // Handle a line received from the client, every response line is passed to "out"; returns false when the session is over
+  public boolean onLine(String line, Consumer<String> out) throws IOException {
+    int type = this.playing ? ServerMetrics.GUESS : this.wordNumber ? BinaryProtocol.WORD_STATISTICS : this.requestType != null ? (this.username != null ? Integer.parseInt(this.requestType) : 0) : line.equals("5") || line.equals("7") ? Integer.parseInt(line) : 0; // request completed by this line, 0 if the line only starts or continues one
+    if (type == 0) return line(line, out);
+
+    long start = System.nanoTime();
+
+    try {return line(line, out);}
+    catch (IOException | RuntimeException e) {
+      WordleServerMain.metrics.error(type);
+      throw e;
+    }
+    finally {WordleServerMain.metrics.record(type, System.nanoTime() - start);}
+  }
+
+  // Handle a frame received from a binary client (type, id and payload), every response frame is passed to "out"; returns false when the session is over
+  public boolean onFrame(ByteBuffer frame, Consumer<byte[]> out) throws IOException {
+    int type = frame.hasRemaining() ? frame.get(frame.position()) : 0;
+    if (type < 1 || type >= ServerMetrics.REQUESTS.length) return frame(frame, out); // not a request of ours, refused there
+
+    long start = System.nanoTime();
+
+    try {return frame(frame, out);}
+    catch (IOException | RuntimeException e) {
+      WordleServerMain.metrics.error(type);
+      throw e;
+    }
+    finally {WordleServerMain.metrics.record(type, System.nanoTime() - start);}
+  }
+
+  // Handle a line of the text protocol
+  private boolean line(String line, Consumer<String> out) throws IOException {
+    if (this.playing) {
+      guess(line, out);
+      return true;
+    }
+
+    // If the request is waiting for the secret word number
+    if (this.wordNumber) {
+      this.wordNumber = false;
+
+      int number;
+      try {number = Integer.parseInt(line.trim());}
+      catch (NumberFormatException e) {number = -1;} // never the number of a secret word
+
+      List<Integer> statistics = WordleServerMain.getWordStatistics(number); // number of the word, started, solved and failed games, guess distribution
+
+      out.accept(statistics.isEmpty() ? "-1" : "1"); // "-1" if there are no statistics of this word
+      for (int statistic: statistics) out.accept(String.valueOf(statistic));
+
+      return true;
+    }
+
+    // If the request is waiting for username and password
+    if (this.requestType != null) {
+      if (this.username == null) {
+        this.username = line; // read the username from the client
+        return true;
+      }
+
+      String requestType = this.requestType;
+      String username = this.username;
+      this.requestType = null;
+      this.username = null;
+
+      return request(requestType, username, line, out); // the password is the last line of the request
+    }
+
+    // Requests with username and password
+    if (line.equals("1") || line.equals("2") || line.equals("3") || line.equals("4") || line.equals("6") || line.equals("9")) {
+      this.requestType = line;
+      return true;
+    }
+
+    // Request with the secret word number
+    if (line.equals("10")) {
+      this.wordNumber = true;
+      return true;
+    }
+
+    // If user want to send a word, "0" if there is no accepted play request
+    if (line.equals("5") && this.currentUser != null) {
+      if (!startGame()) out.accept("0");
+      else checkWordChanged(out); // the secret word can change before the first guess
+    }
+
+    // If user want to share his game's results
+    if (line.equals("7") && this.currentUser != null) share();
+
+    return true; // ignore unknown lines
+  }
+
+  // Handle a frame of the binary protocol
+  private boolean frame(ByteBuffer frame, Consumer<byte[]> out) throws IOException {
+    try {
+      byte type = frame.get();
+      int id = frame.getInt(); // repeated in the response
+
+      // Requests with username and password
+      if (type == BinaryProtocol.REGISTER || type == BinaryProtocol.LOGIN || type == BinaryProtocol.LOGOUT || type == BinaryProtocol.PLAY || type == BinaryProtocol.STATISTICS || type == BinaryProtocol.LEADERBOARD) {
+        String username = BinaryProtocol.getString(frame);
+        String password = BinaryProtocol.getString(frame);
+
+        if (type == BinaryProtocol.REGISTER) out.accept(BinaryProtocol.response(type, id, register(username, password)));
+
+        if (type == BinaryProtocol.LOGIN) out.accept(BinaryProtocol.response(type, id, login(username, password)));
+
+        if (type == BinaryProtocol.PLAY) out.accept(BinaryProtocol.response(type, id, play(username, password)));
+
+        if (type == BinaryProtocol.STATISTICS) out.accept(BinaryProtocol.statistics(id, WordleServerMain.getStatistics(username, password)));
+
+        if (type == BinaryProtocol.LEADERBOARD) out.accept(BinaryProtocol.leaderboard(id, WordleServerMain.getLeaderboard(username, password)));
+
+        if (type == BinaryProtocol.LOGOUT) {
+          int logout = logout(username, password);
+          out.accept(BinaryProtocol.response(type, id, logout));
+
+          return logout != 1; // the session is over after a successful logout
+        }
+
+        return true;
+      }
+
+      // If user want to start the game, only after an accepted play request (a pipelined start can follow a refused one); the first guess finds out if the secret word has changed
+      if (type == BinaryProtocol.START) {
+        out.accept(BinaryProtocol.response(type, id, startGame() ? 1 : -1));
+        return true;
+      }
+
+      // If user want to send a word, "0" if the secret word has changed or there is no game
+      if (type == BinaryProtocol.GUESS) {
+        String guessedWord = WordDictionary.decode(frame.getLong());
+        int result = this.playing ? guessWord(guessedWord) : 0;
+
+        out.accept(result == 1 ? BinaryProtocol.hint(id, this.hintWord) : BinaryProtocol.response(type, id, result));
+        return true;
+      }
+
+      // If user wants the statistics of a secret word, "-1" if the word is unknown
+      if (type == BinaryProtocol.WORD_STATISTICS) {
+        out.accept(BinaryProtocol.wordStatistics(id, WordleServerMain.getWordStatistics(frame.getInt())));
+        return true;
+      }
+
+      // If user want to share his game's results
+      if (type == BinaryProtocol.SHARE) {
+        if (this.currentUser != null) share();
+        out.accept(BinaryProtocol.response(type, id, this.currentUser != null ? 1 : -1));
+        return true;
+      }
+
+      throw new ProtocolException("unknown frame type " + type); // not a client of ours
+    }
+    catch (BufferUnderflowException e) {throw new ProtocolException("truncated frame");}
+  }
+
+  // Handle a text request with username and password; returns false when the session is over
+  private boolean request(String requestType, String username, String password, Consumer<String> out) throws IOException {
+    // If user want to register or login
+    if (requestType.equals("1")) out.accept(String.valueOf(register(username, password))); // "-1" for an empty password, "-2" for a too long username, "-3" for a username with control characters, "0" for a registered user, "1" for a new user
+
+    if (requestType.equals("2")) out.accept(String.valueOf(login(username, password))); // "1" for successful login, "0" if the user is already logged in, "-1" if the password is incorrect
+
+    // If user want to logout
+    if (requestType.equals("3")) {
+      int logout = logout(username, password); // check for successful logout
+
+      out.accept(String.valueOf(logout)); // "1" for successful logout, "-1" if there is no user logged in with this username and password
+
+      if (logout == 1) return false;
+    }
+
+    // If user want to play Wordle
+    if (requestType.equals("4")) out.accept(String.valueOf(play(username, password))); // "1" if the user never played for this word, "-1" otherwise
+
+    // If user wants his statistics
+    if (requestType.equals("6")) {
+      List<Integer> statistics = WordleServerMain.getStatistics(username, password); // get statistics list, followed by the guess distribution
+
+      for (int statistic: statistics) out.accept(String.valueOf(statistic)); // send statistics and guess distribution to the user
+    }
+
+    // If user wants the leaderboard
+    if (requestType.equals("9")) {
+      List<Leaderboard.Ranking> rankings = WordleServerMain.getLeaderboard(username, password); // best users and position of the user, in every index
+
+      out.accept(rankings.isEmpty() ? "-1" : "1"); // "-1" if the user isn't logged in
+
+      // For every index the rank, value and number of entries, then the entries ("rank value username")
+      for (Leaderboard.Ranking ranking: rankings) {
+        out.accept(ranking.getUser().getRank() + " " + ranking.getUser().getValue() + " " + ranking.getTop().size());
+        for (Leaderboard.Entry entry: ranking.getTop()) out.accept(entry.getRank() + " " + entry.getValue() + " " + entry.getUsername());
+      }
+    }
+
+    return true;
+  }
+
+  // Register a user: returns -1 if the password is empty, -2 if the username is too long, -3 if the username has control characters
+  // (a "\n" would split the lines of the leaderboard and of the shared messages), 0 if the user is already registered, 1 if the user is registered now
+  private int register(String username, String password) throws IOException {
+    if (password.trim().isEmpty()) return -1; // if the password is empty
+
+    if (username.length() > User.MAX_USERNAME) return -2; // if the username is longer than User.MAX_USERNAME characters
+
+    if (username.chars().anyMatch(Character::isISOControl)) return -3; // if the username has control characters, only a binary client can send them
+
+    return WordleServerMain.checkUser(username, password); // check if the user is already registered
+  }
+
+  // Log in a user: returns 1 for successful login, 0 if the user is already logged in, -1 if the password is incorrect
+  private int login(String username, String password) throws IOException {
+    int login = WordleServerMain.logger(username, password); // check for successful login
+
+    if (login == 1) {
+      this.currentUser = WordleServerMain.getCurrentUser(username, password); // get the current user
+      this.loggedIN = true;
+    }
+
+    return login;
+  }
+
+  // Log out a user: returns 1 for successful logout, -1 if there is no user logged in with this username and password
+  private int logout(String username, String password) throws IOException {
+    int logout = WordleServerMain.outLogger(username, password); // check for successful logout
+
+    if (logout == 1) this.loggedIN = false;
+
+    return logout;
+  }
+
+  // Ask to play the secret word: returns 1 if the user never played for this word, -1 otherwise
+  private int play(String username, String password) throws IOException {
+    SecretWordEpoch epoch = WordleServerMain.currentEpoch(); // read the secret word only once, it can change at any time
+    int play = WordleServerMain.checkPlay(username, password, epoch); // check if the user is already playing
+
+    if (play == 1) {
+      this.currentUser = WordleServerMain.getCurrentUser(username, password); // get the current user
+      this.gameEpoch = epoch; // the game is played on this secret word
+      epoch.getStatistics().started(); // one more player of this secret word
+    }
+
+    return play;
+  }
+
+  // Start the game of the accepted play request, the next words received are guesses; returns false if there is no accepted play request or the game already started
+  private boolean startGame() {
+    if (this.gameEpoch == null || this.playing) return false;
+
+    this.playing = true;
+    this.tries = 0;
+    return true;
+  }
+
+  // The game is over, a new play request is needed for the next one
+  private void endGame() {
+    this.playing = false;
+    this.gameEpoch = null;
+  }
+
+  // Handle a guessed word of the current game received as text line
+  private void guess(String guessedWord, Consumer<String> out) throws IOException {
+    int result = guessWord(guessedWord);
+
+    if (result == 0) {
+      out.accept("0"); // if the secret word has changed while the user was typing
+      return;
+    }
+
+    if (result == -1) {
+      out.accept("-1"); // if the guessed word is not in the word list
+      checkWordChanged(out); // the secret word can change before the next guess
+      return;
+    }
+
+    out.accept("1"); // if the guessed word is in the word list
+    out.accept(String.valueOf(this.hintWord)); // send the guessed word with hint
+
+    if (this.playing) checkWordChanged(out); // the secret word can change before the next guess
+  }
+
+  // Play a guessed word of the current game: returns 0 if the secret word has changed (the game is stopped), -1 if the word is not in the word list, 1 if the hint word is ready
+  private int guessWord(String guessedWord) throws IOException {
+    SecretWordEpoch epoch = WordleServerMain.currentEpoch(); // read the secret word only once, it can change at any time
+
+    if (wordChanged(epoch)) return 0; // if the secret word has changed while the user was typing
+
+    if (!this.words.contains(guessedWord)) return -1; // if the guessed word is not in the word list
+
+    this.hintWord = this.hints.compute(epoch, guessedWord); // get hints for the guessed word, from the same secret word checked above
+
+    // If user guess the secret word
+    if (guessedWord.equals(epoch.getWord())) {
+      endGame();
+      this.numberOfTries = ("" + ++this.tries + "").trim();
+      this.gameNumber = epoch.getNumber();
+
+      WordleServerMain.updateWin(this.currentUser, this.tries); // update current user's statistics and guess distribution
+      epoch.getStatistics().solved(this.tries); // and the ones of all the players of this secret word
+      return 1;
+    }
+
+    // If the user loose
+    if (++this.tries == 12) {
+      endGame();
+      this.numberOfTries = "X";
+      this.gameNumber = epoch.getNumber();
+
+      WordleServerMain.updateLoss(this.currentUser); // update current user's statistics
+      epoch.getStatistics().failed(); // and the ones of all the players of this secret word
+    }
+
+    return 1;
+  }
+
+  // If the secret word has changed stop the game and send "0"; returns true if the game was stopped
+  private boolean checkWordChanged(Consumer<String> out) {
+    if (!wordChanged(WordleServerMain.currentEpoch())) return false;
+
+    out.accept("0"); // if the secret word has changed send "0"
+    return true;
+  }
+
+  // If "epoch" isn't the secret word of the game stop the game; returns true if the game was stopped
+  private boolean wordChanged(SecretWordEpoch epoch) {
+    if (epoch == this.gameEpoch) return false;
+
+    WordleServerMain.cancelGame(this.currentUser, this.gameEpoch.getWord()); // remove the played word of the game
+    endGame();
+    return true;
+  }
+
+  // Share the result of the last game with the multicast group
+  private void share() {
+    String sharingMessage = this.currentUser.getUsername() + ": Wordle " + this.gameNumber + " " + this.numberOfTries + "/12"; // result of the game (UDP message)
+
+    WordleServerMain.addSharedMessage(this.currentUser, sharingMessage.split(":")[1].trim()); // add this new shared message without the username
+
+    this.sharePublisher.share(sharingMessage); // send the sharing message to multicast group, batched with the ones shared at the same time
+  }
+
+  // The client went away: log out the current user if he didn't
+  public void close() throws IOException {
+    if (this.closed) return;
+    this.closed = true;
+
+    WordleServerMain.metrics.sessionClosed();
+    if (this.loggedIN) WordleServerMain.outLogger(this.currentUser.getUsername(), this.currentUser.getPassword());
+    this.loggedIN = false;
+  }
+}